@@ -0,0 +1,87 @@
+package geekbrains.connection;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode a message into a frame and to decode its payload, for each codec and a few typical
+ * messages. The encoded size of each is reported alongside as the {@code frameBytes} counter.
+ *
+ * @author Abubakar Musanipov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"serialization", "binary"})
+    public String codec;
+
+    /**
+     * A short and a long chat line, the user list sent on sign-in and a history page.
+     */
+    @Param({"text-16", "text-1024", "users-100", "history-100"})
+    public String message;
+
+    private MessageCodec messageCodec;
+    private Message sample;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void encodeSample() throws IOException {
+        messageCodec = SampleMessages.codec(codec);
+        int count = Integer.parseInt(message.substring(message.indexOf('-') + 1));
+        if (message.startsWith("text-")) {
+            sample = SampleMessages.text(count);
+        } else if (message.startsWith("users-")) {
+            sample = SampleMessages.userList(count);
+        } else {
+            sample = SampleMessages.historyPage(count, 80);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        messageCodec.encode(sample, out);
+        payload = out.toByteArray();
+    }
+
+    /**
+     * The size of the frame, length header included. It is the same on every call, so it is set rather than
+     * summed and reads as bytes per message.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+
+        public long frameBytes;
+    }
+
+    @Benchmark
+    public ByteBuffer encode(Size size) throws IOException {
+        ByteBuffer frame = MessageFrames.encode(sample, messageCodec);
+        size.frameBytes = frame.remaining();
+        return frame;
+    }
+
+    @Benchmark
+    public Message decode() throws IOException, ClassNotFoundException {
+        return messageCodec.decode(payload, 0, payload.length);
+    }
+}
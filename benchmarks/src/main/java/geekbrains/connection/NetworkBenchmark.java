@@ -0,0 +1,84 @@
+package geekbrains.connection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message sent with {@link Network#send} and echoed back over loopback, the way a client and the thread
+ * engine of the server talk: the time is a full round trip, both encodings and both decodings included.
+ *
+ * @author Abubakar Musanipov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkBenchmark {
+
+    @Param({"serialization", "binary"})
+    public String codec;
+
+    @Param({"16", "1024"})
+    public int textLength;
+
+    private ServerSocket serverSocket;
+    private Thread echo;
+    private Network client;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void connect() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        echo = new Thread(this::echo, "benchmark-echo");
+        echo.setDaemon(true);
+        echo.start();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        socket.setTcpNoDelay(true);
+        client = new Network(socket);
+        client.setCodec(SampleMessages.codec(codec));
+        message = SampleMessages.text(textLength);
+    }
+
+    private void echo() {
+        try (Socket socket = serverSocket.accept()) {
+            socket.setTcpNoDelay(true);
+            Network server = new Network(socket);
+            while (true) {
+                server.send(server.receive());
+            }
+        } catch (IOException | ClassNotFoundException ignored) {
+        }
+    }
+
+    @Benchmark
+    public Message roundTrip() throws IOException, ClassNotFoundException {
+        client.send(message);
+        return client.receive();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException, InterruptedException {
+        client.close();
+        serverSocket.close();
+        echo.join(1000);
+    }
+}
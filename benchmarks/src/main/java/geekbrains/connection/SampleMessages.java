@@ -0,0 +1,73 @@
+package geekbrains.connection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The messages the benchmarks send: the same content every run, so results stay comparable.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class SampleMessages {
+
+    private static final long TIMESTAMP = 1_700_000_000_000L;
+    private static final String WORDS = "the quick brown fox jumps over the lazy dog ";
+
+    private SampleMessages() {
+    }
+
+    public static MessageCodec codec(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "serialization":
+                return MessageCodec.SERIALIZATION;
+            case "binary":
+                return MessageCodec.BINARY;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+    }
+
+    /**
+     * A stamped public message with a text of the given length.
+     */
+    public static Message text(int length) {
+        return text(1, "user1", length);
+    }
+
+    public static Message text(long id, String sender, int length) {
+        return new Message(MessageType.TEXT_MESSAGE, sender, null, "general", text(length, id), null, id, TIMESTAMP + id);
+    }
+
+    public static Message privateText(long id, String sender, String recipient, int length) {
+        return new Message(MessageType.PRIVATE_TEXT_MESSAGE, sender, recipient, "general", text(length, id), null, id, TIMESTAMP + id);
+    }
+
+    public static Message userList(int users) {
+        Set<String> nicknames = new LinkedHashSet<>();
+        for (int i = 0; i < users; i++) {
+            nicknames.add("user" + i);
+        }
+        return new Message(MessageType.NICKNAME_ACCEPTED, nicknames);
+    }
+
+    public static Message historyPage(int messages, int textLength) {
+        List<Message> history = new ArrayList<>(messages);
+        for (int i = 1; i <= messages; i++) {
+            history.add(text(i, "user" + i % 50, textLength));
+        }
+        return Message.historyPage("general", history, 1);
+    }
+
+    private static String text(int length, long seed) {
+        StringBuilder text = new StringBuilder(length + WORDS.length());
+        text.append(seed).append(' ');
+        while (text.length() < length) {
+            text.append(WORDS);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
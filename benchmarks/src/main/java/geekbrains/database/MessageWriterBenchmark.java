@@ -0,0 +1,86 @@
+package geekbrains.database;
+
+import geekbrains.connection.SampleMessages;
+import geekbrains.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * How many chat messages a second reach {@code chat_history} through {@link MessageWriter}, in a fresh
+ * database of its own. Each call queues a burst of messages and returns once the writer has committed all of
+ * them, so the score is messages saved per second, batching and the full-text index included.
+ *
+ * @author Abubakar Musanipov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageWriterBenchmark {
+
+    private static final int BURST = 1000;
+
+    @Param({"80"})
+    public int textLength;
+
+    private Path directory;
+    private SQLService sqlService;
+    private MessageWriter writer;
+    private long nextId;
+
+    @Setup(Level.Trial)
+    public void openDatabase() throws IOException, SQLException {
+        directory = Files.createTempDirectory("chat-benchmark");
+        sqlService = new SQLService("jdbc:sqlite:" + directory.resolve("history.db"), Settings.DATABASE_POOL_SIZE);
+        sqlService.createHistorySchema();
+        writer = new MessageWriter(sqlService);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void saveBurst() throws InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            long id = ++nextId;
+            writer.save(i % 10 == 0
+                    ? SampleMessages.privateText(id, "user" + id % 50, "user" + (id + 1) % 50, textLength)
+                    : SampleMessages.text(id, "user" + id % 50, textLength));
+        }
+        while (writer.getSavedMessages() + writer.getDroppedMessages() < nextId) {
+            if (writer.getFailedMessages() > 0) {
+                throw new IllegalStateException("The message writer could not save a message");
+            }
+            Thread.sleep(0, 100_000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() throws IOException, SQLException {
+        writer.close();
+        sqlService.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Frame;
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageCodec;
+import geekbrains.connection.SampleMessages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChatServer#sendMessageAllUsers} handing one chat line to every signed-in user. The users are
+ * connections that take the encoded frame and drop it, so the time is the server's own share of a broadcast:
+ * encoding once, walking the users and handing each the frame, without any socket.
+ *
+ * @author Abubakar Musanipov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int users;
+
+    @Param({"binary"})
+    public String codec;
+
+    private ChatServer server;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void signInUsers() {
+        server = new ChatServer();
+        MessageCodec messageCodec = SampleMessages.codec(codec);
+        for (int i = 0; i < users; i++) {
+            server.getModel().reserveNickname("user" + i, new DiscardingConnection(messageCodec, i));
+        }
+        message = SampleMessages.text(80);
+    }
+
+    @Benchmark
+    public void broadcast() {
+        server.sendMessageAllUsers(message);
+    }
+
+    /**
+     * Takes the frame in its codec, as a queued connection would before writing it, and forgets it.
+     */
+    private static final class DiscardingConnection implements Connection {
+
+        private final MessageCodec codec;
+        private final SocketAddress address;
+        private long bytes;
+
+        DiscardingConnection(MessageCodec codec, int port) {
+            this.codec = codec;
+            this.address = InetSocketAddress.createUnresolved("user", port);
+        }
+
+        @Override
+        public void send(Frame frame) throws IOException {
+            ByteBuffer encoded = frame.encoded(codec);
+            bytes += encoded.remaining();
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return address;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Message;
+import geekbrains.connection.Network;
+import geekbrains.connection.SampleMessages;
+import geekbrains.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message echoed back by a running server engine: {@link ThreadPerConnectionServer} on platform or virtual
+ * threads, or {@link NioServer}. The handler only sends each message back, so the time is a full loopback round
+ * trip through the engine's reading, decoding, outbound queue and writing. Run with {@code -t} to give every
+ * benchmark thread a connection of its own.
+ *
+ * @author Abubakar Musanipov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+
+        @Param({"thread", "virtual", "nio"})
+        public String engine;
+
+        private ServerEngine server;
+        private Thread acceptor;
+        private int port;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            server = create(engine);
+            port = freePort();
+            server.bind(port);
+            acceptor = new Thread(this::serve, "benchmark-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private static ServerEngine create(String engine) {
+            switch (engine) {
+                case "thread":
+                    return ThreadPerConnectionServer.platformThreads(EchoHandler::new);
+                case "virtual":
+                    return ThreadPerConnectionServer.virtualThreads(EchoHandler::new);
+                case "nio":
+                    return new NioServer(EchoHandler::new, Settings.SERVER_EVENT_LOOPS);
+                default:
+                    throw new IllegalArgumentException("Unknown server engine: " + engine);
+            }
+        }
+
+        private static int freePort() throws IOException {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            }
+        }
+
+        private void serve() {
+            try {
+                server.serve();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException, InterruptedException {
+            server.close();
+            acceptor.join(1000);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        @Param({"binary"})
+        public String codec;
+
+        @Param({"80"})
+        public int textLength;
+
+        private Network network;
+        private Message message;
+
+        @Setup(Level.Trial)
+        public void connect(Engine engine) throws IOException {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), engine.port);
+            socket.setTcpNoDelay(true);
+            network = new Network(socket);
+            network.setCodec(SampleMessages.codec(codec));
+            message = SampleMessages.text(textLength);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            network.close();
+        }
+    }
+
+    @Benchmark
+    public Message roundTrip(Client client) throws IOException, ClassNotFoundException {
+        client.network.send(client.message);
+        return client.network.receive();
+    }
+
+    private static class EchoHandler implements ConnectionHandler {
+
+        private final Connection connection;
+
+        EchoHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onOpen() {
+        }
+
+        @Override
+        public void onMessage(Message message) throws IOException {
+            connection.send(message);
+        }
+
+        @Override
+        public void onClose() {
+        }
+    }
+}
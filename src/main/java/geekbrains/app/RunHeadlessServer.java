@@ -0,0 +1,36 @@
+package geekbrains.app;
+
+import geekbrains.server.ChatServer;
+import geekbrains.server.ServerEventLog;
+import geekbrains.settings.ServerOptions;
+import geekbrains.settings.Settings;
+
+import java.nio.file.Paths;
+
+/**
+ * Starts the server without any window, logging to the event log files and standard output, and runs until the
+ * process is stopped.
+ *
+ * @author Abubakar Musanipov
+ */
+public class RunHeadlessServer {
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int port = ServerOptions.apply(args);
+        ChatServer server = new ChatServer();
+        ServerEventLog eventLog = new ServerEventLog(Paths.get(Settings.SERVER_LOG_DIRECTORY));
+        eventLog.addTail(System.out::print);
+        server.addLogSink(eventLog);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server.isServerStart()) {
+                server.stopServer();
+            }
+            eventLog.close();
+        }));
+        server.startServer(port);
+        if (!server.isServerStart()) {
+            System.exit(1);
+        }
+        server.getTermination().join();
+    }
+}
@@ -0,0 +1,68 @@
+package geekbrains.app;
+
+import geekbrains.database.ExportFormat;
+import geekbrains.database.HistoryExporter;
+import geekbrains.database.SearchQuery;
+import geekbrains.settings.Settings;
+
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Exports the chat history without any window. Arguments are {@code --key=value}: {@code out} (required),
+ * {@code format} (text, csv or ndjson; text by default), {@code gzip}, {@code room}, {@code filter} (the
+ * {@code from:}, {@code after:} and {@code before:} of a search) and {@code database-url}.
+ *
+ * @author Abubakar Musanipov
+ */
+public class RunHistoryExport {
+    public static void main(String[] args) throws Exception {
+        String out = null;
+        ExportFormat format = ExportFormat.TEXT;
+        boolean gzip = false;
+        String room = null;
+        String filter = "";
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            String value = arg.substring(separator + 1).trim();
+            switch (arg.substring(2, separator)) {
+                case "out":
+                    out = value;
+                    break;
+                case "format":
+                    format = ExportFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "gzip":
+                    gzip = Boolean.parseBoolean(value);
+                    break;
+                case "room":
+                    room = value.isEmpty() ? null : value;
+                    break;
+                case "filter":
+                    filter = value;
+                    break;
+                case "database-url":
+                    Settings.DATABASE_URL = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown export option: " + arg);
+            }
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Name the file to write with --out=<file>");
+        }
+        long start = System.currentTimeMillis();
+        int[] shownPercent = {-1};
+        long rows = new HistoryExporter().export(Paths.get(out), format, gzip, room, SearchQuery.parse(filter), (count, fraction) -> {
+            int percent = (int) (fraction * 100);
+            if (percent != shownPercent[0]) {
+                shownPercent[0] = percent;
+                System.out.printf("%3d%% %,d messages%n", percent, count);
+            }
+        });
+        System.out.printf("Exported %,d messages to %s in %d ms%n", rows, out, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,72 @@
+package geekbrains.app;
+
+import geekbrains.loadtest.LoadGenerator;
+import geekbrains.loadtest.LoadProfile;
+
+/**
+ * Puts a running server under the load of many simulated users and reports throughput and latency. Arguments
+ * are {@code --key=value}: {@code host}, {@code port}, {@code users}, {@code rate} (messages per second per
+ * user), {@code private-share} (0 to 1), {@code churn} (users leaving and signing in again per second),
+ * {@code duration} and {@code report-interval} (seconds), {@code text-length}, {@code nickname-prefix},
+ * {@code password}, {@code sender-threads} and {@code connect-threads}.
+ *
+ * @author Abubakar Musanipov
+ */
+public class RunLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = new LoadProfile();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            String value = arg.substring(separator + 1).trim();
+            switch (arg.substring(2, separator)) {
+                case "host":
+                    profile.host = value;
+                    break;
+                case "port":
+                    profile.port = Integer.parseInt(value);
+                    break;
+                case "users":
+                    profile.users = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    profile.messagesPerUserPerSecond = Double.parseDouble(value);
+                    break;
+                case "private-share":
+                    profile.privateShare = Double.parseDouble(value);
+                    break;
+                case "churn":
+                    profile.churnPerSecond = Double.parseDouble(value);
+                    break;
+                case "duration":
+                    profile.durationSeconds = Long.parseLong(value);
+                    break;
+                case "report-interval":
+                    profile.reportIntervalSeconds = Long.parseLong(value);
+                    break;
+                case "text-length":
+                    profile.textLength = Integer.parseInt(value);
+                    break;
+                case "nickname-prefix":
+                    profile.nicknamePrefix = value;
+                    break;
+                case "password":
+                    profile.password = value;
+                    break;
+                case "sender-threads":
+                    profile.senderThreads = Integer.parseInt(value);
+                    break;
+                case "connect-threads":
+                    profile.connectThreads = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown load option: " + arg);
+            }
+        }
+        if (!new LoadGenerator(profile, System.out).run()) {
+            System.exit(1);
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package geekbrains.app;
 
 import geekbrains.server.ServerGuiController;
+import geekbrains.settings.Settings;
 
 /**
  * @author Abubakar Musanipov
  */
 public class RunServer {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            Settings.SERVER_ENGINE = args[0];
+        }
         ServerGuiController serverGuiController = new ServerGuiController();
         serverGuiController.run(serverGuiController);
     }
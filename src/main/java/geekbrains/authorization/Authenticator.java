@@ -0,0 +1,44 @@
+package geekbrains.authorization;
+
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Signs a user in to the chat server, or registers a new account there. Both run in the background and
+ * complete with null on success and otherwise the reason the server gave; cancelling the future abandons the
+ * attempt.
+ *
+ * @author Abubakar Musanipov
+ */
+public interface Authenticator {
+
+    CompletableFuture<String> signIn(String nickname, String password);
+
+    CompletableFuture<String> register(String nickname, String password);
+
+    /**
+     * Hands the outcome of a background task to {@code action} on the Swing event thread: null on success,
+     * otherwise the text to show. Timeouts, cancellation and connection errors become such a text too.
+     */
+    static void onEventThread(CompletableFuture<String> task, Consumer<String> action) {
+        task.whenComplete((failure, error) -> {
+            String outcome = error == null ? failure : describe(error);
+            SwingUtilities.invokeLater(() -> action.accept(outcome));
+        });
+    }
+
+    static String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "The server did not answer in time. Try again";
+        }
+        if (cause instanceof CancellationException) {
+            return "Cancelled";
+        }
+        return "Could not reach the server. Try again";
+    }
+}
@@ -1,12 +1,13 @@
 package geekbrains.authorization;
 
-import geekbrains.database.SQLService;
 import geekbrains.settings.Settings;
 
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import java.awt.*;
-import java.sql.SQLException;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Abubakar Musanipov
@@ -20,10 +21,14 @@ public class Login extends JDialog {
     private final JLabel labelPassword;
     private final JButton buttonLogin;
     private final JButton buttonCancel;
+    private final JProgressBar progressBar;
+    private final Authenticator authenticator;
+    private CompletableFuture<String> pending;
     private boolean succeeded;
 
-    public Login(Frame parent) {
+    public Login(Frame parent, Authenticator authenticator) {
         super(parent, Settings.LOGIN_TITLE, true);
+        this.authenticator = authenticator;
         JPanel panel = new JPanel(new GridBagLayout());
         GridBagConstraints gridBagConstraints = new GridBagConstraints();
 
@@ -57,24 +62,33 @@ public class Login extends JDialog {
         buttonLogin = new JButton("Login");
 
         buttonLogin.addActionListener(e -> {
-            try {
-                if (authenticate(getNickname(), getPassword())) {
-                    JOptionPane.showMessageDialog(Login.this, "You have successfully logged in.", "Login", JOptionPane.INFORMATION_MESSAGE);
-                    succeeded = true;
-                    dispose();
-                } else {
-                    JOptionPane.showMessageDialog(Login.this, "Invalid username or password", "Login", JOptionPane.ERROR_MESSAGE);
-                    textFieldNickname.setText("");
-                    passwordField.setText("");
-                    succeeded = false;
-                }
-            } catch (SQLException sqlException) {
-                JOptionPane.showMessageDialog(Login.this, sqlException.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            if (pending != null) {
+                return;
             }
+            start(authenticate(getNickname(), getPassword()));
         });
         buttonCancel = new JButton("Cancel");
-        buttonCancel.addActionListener(e -> dispose());
+        buttonCancel.addActionListener(e -> {
+            if (pending != null) {
+                pending.cancel(true);
+            } else {
+                dispose();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+            }
+        });
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
         JPanel buttonPanel = new JPanel();
+        buttonPanel.add(progressBar);
         buttonPanel.add(buttonLogin);
         buttonPanel.add(buttonCancel);
 
@@ -86,8 +100,41 @@ public class Login extends JDialog {
         setLocationRelativeTo(parent);
     }
 
-    public boolean authenticate(String getNickname, String password) throws SQLException {
-        return SQLService.getNicknameByLoginAndPassword(getNickname, password) != null;
+    /**
+     * Waits for the server without blocking the event thread; the answer is handled back on it.
+     */
+    private void start(CompletableFuture<String> task) {
+        pending = task;
+        setBusy(true);
+        Authenticator.onEventThread(task, failure -> {
+            pending = null;
+            setBusy(false);
+            if (task.isCancelled()) {
+                return;
+            }
+            if (failure == null) {
+                JOptionPane.showMessageDialog(Login.this, "You have successfully logged in.", "Login", JOptionPane.INFORMATION_MESSAGE);
+                succeeded = true;
+                dispose();
+            } else {
+                JOptionPane.showMessageDialog(Login.this, failure, "Login", JOptionPane.ERROR_MESSAGE);
+                passwordField.setText("");
+                succeeded = false;
+            }
+        });
+    }
+
+    private void setBusy(boolean busy) {
+        progressBar.setVisible(busy);
+        progressBar.setString(busy ? "Signing in..." : null);
+        textFieldNickname.setEnabled(!busy);
+        passwordField.setEnabled(!busy);
+        buttonLogin.setEnabled(!busy);
+        pack();
+    }
+
+    public CompletableFuture<String> authenticate(String nickname, String password) {
+        return authenticator.signIn(nickname, password);
     }
 
     public String getNickname() {
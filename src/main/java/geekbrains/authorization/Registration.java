@@ -1,13 +1,14 @@
 package geekbrains.authorization;
 
-import geekbrains.database.SQLService;
 import geekbrains.settings.Settings;
 import geekbrains.validator.Validator;
 
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import java.awt.*;
-import java.sql.SQLException;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Abubakar Musanipov
@@ -20,10 +21,14 @@ public class Registration extends JDialog {
     private final JLabel labelPassword;
     private final JButton buttonRegistration;
     private final JButton buttonCancel;
+    private final JProgressBar progressBar;
+    private final Authenticator authenticator;
+    private CompletableFuture<String> pending;
     private boolean succeeded;
 
-    public Registration(Frame parent) {
+    public Registration(Frame parent, Authenticator authenticator) {
         super(parent, Settings.REGISTRATION_TITLE, true);
+        this.authenticator = authenticator;
         JPanel panel = new JPanel(new GridBagLayout());
         GridBagConstraints gridBagConstraints = new GridBagConstraints();
 
@@ -57,24 +62,37 @@ public class Registration extends JDialog {
         buttonRegistration = new JButton("Registration");
 
         buttonRegistration.addActionListener(e -> {
-            try {
-                if (checkUserInputPasswordAndNickname(getNickname(), getPassword()) && authenticate(getNickname(), getPassword())) {
-                    JOptionPane.showMessageDialog(Registration.this, "You have successfully registration.", "Registration", JOptionPane.INFORMATION_MESSAGE);
-                    succeeded = true;
-                    dispose();
-                } else {
-                    JOptionPane.showMessageDialog(Registration.this, "Invalid username or password", "Registration", JOptionPane.ERROR_MESSAGE);
-                    textFieldNickname.setText("");
-                    passwordField.setText("");
-                    succeeded = false;
-                }
-            } catch (SQLException sqlException) {
-                JOptionPane.showMessageDialog(Registration.this, sqlException.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            if (pending != null) {
+                return;
+            }
+            if (!checkUserInputPasswordAndNickname(getNickname(), getPassword())) {
+                JOptionPane.showMessageDialog(Registration.this, "Invalid username or password", "Registration", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+            start(authenticate(getNickname(), getPassword()));
         });
         buttonCancel = new JButton("Cancel");
-        buttonCancel.addActionListener(e -> dispose());
+        buttonCancel.addActionListener(e -> {
+            if (pending != null) {
+                pending.cancel(true);
+            } else {
+                dispose();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+            }
+        });
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
         JPanel buttonPanel = new JPanel();
+        buttonPanel.add(progressBar);
         buttonPanel.add(buttonRegistration);
         buttonPanel.add(buttonCancel);
 
@@ -86,8 +104,41 @@ public class Registration extends JDialog {
         setLocationRelativeTo(parent);
     }
 
-    public boolean authenticate(String getNickname, String password) throws SQLException {
-        return SQLService.registration(getNickname, password);
+    /**
+     * Waits for the server without blocking the event thread; the answer is handled back on it.
+     */
+    private void start(CompletableFuture<String> task) {
+        pending = task;
+        setBusy(true);
+        Authenticator.onEventThread(task, failure -> {
+            pending = null;
+            setBusy(false);
+            if (task.isCancelled()) {
+                return;
+            }
+            if (failure == null) {
+                JOptionPane.showMessageDialog(Registration.this, "You have successfully registration.", "Registration", JOptionPane.INFORMATION_MESSAGE);
+                succeeded = true;
+                dispose();
+            } else {
+                JOptionPane.showMessageDialog(Registration.this, failure, "Registration", JOptionPane.ERROR_MESSAGE);
+                passwordField.setText("");
+                succeeded = false;
+            }
+        });
+    }
+
+    private void setBusy(boolean busy) {
+        progressBar.setVisible(busy);
+        progressBar.setString(busy ? "Registering..." : null);
+        textFieldNickname.setEnabled(!busy);
+        passwordField.setEnabled(!busy);
+        buttonRegistration.setEnabled(!busy);
+        pack();
+    }
+
+    public CompletableFuture<String> authenticate(String nickname, String password) {
+        return authenticator.register(nickname, password);
     }
 
     public String getNickname() {
@@ -0,0 +1,43 @@
+package geekbrains.client;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One line of the chat log. The displayed text is built the first time the line is painted and kept, so
+ * scrolling never formats the same line twice.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class ChatLine {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final long timestamp;
+    private final String text;
+    private String formatted;
+
+    public ChatLine(long timestamp, String text) {
+        this.timestamp = timestamp;
+        this.text = text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        String line = formatted;
+        if (line == null) {
+            line = "[" + TIME_FORMATTER.format(Instant.ofEpochMilli(timestamp)) + "] " + text;
+            formatted = line;
+        }
+        return line;
+    }
+}
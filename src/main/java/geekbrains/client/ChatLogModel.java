@@ -0,0 +1,91 @@
+package geekbrains.client;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * The chat log as a list model over a ring buffer of at most {@code retention} lines. A new line past the limit
+ * pushes the oldest one out, so a client left open for days holds the same memory as after an hour. Only the
+ * rows in view are ever painted by the list. Must be used on the event thread.
+ *
+ * @author Abubakar Musanipov
+ */
+public class ChatLogModel extends AbstractListModel<ChatLine> {
+
+    private final ChatLine[] lines;
+    private int head;
+    private int size;
+
+    public ChatLogModel(int retention) {
+        this.lines = new ChatLine[Math.max(1, retention)];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public ChatLine getElementAt(int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    public void append(ChatLine line) {
+        if (size == lines.length) {
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            size--;
+            fireIntervalRemoved(this, 0, 0);
+        }
+        lines[(head + size) % lines.length] = line;
+        size++;
+        fireIntervalAdded(this, size - 1, size - 1);
+    }
+
+    /**
+     * Appends a run of lines with one removed and one added event, however many of them there are. Only the
+     * newest lines of a run longer than the log are kept.
+     */
+    public void appendAll(List<ChatLine> newer) {
+        int count = Math.min(newer.size(), lines.length);
+        if (count == 0) {
+            return;
+        }
+        int evicted = Math.max(0, size + count - lines.length);
+        if (evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                lines[(head + i) % lines.length] = null;
+            }
+            head = (head + evicted) % lines.length;
+            size -= evicted;
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+        for (int i = newer.size() - count; i < newer.size(); i++) {
+            lines[(head + size) % lines.length] = newer.get(i);
+            size++;
+        }
+        fireIntervalAdded(this, size - count, size - 1);
+    }
+
+    /**
+     * Puts older lines, given oldest first, above the log. Only as many as still fit are kept, newest of them
+     * first; returns how many that was.
+     */
+    public int prepend(List<ChatLine> older) {
+        int count = Math.min(older.size(), lines.length - size);
+        if (count == 0) {
+            return 0;
+        }
+        for (int i = older.size() - 1; i >= older.size() - count; i--) {
+            head = (head - 1 + lines.length) % lines.length;
+            lines[head] = older.get(i);
+        }
+        size += count;
+        fireIntervalAdded(this, 0, count - 1);
+        return count;
+    }
+
+    public boolean isFull() {
+        return size == lines.length;
+    }
+}
@@ -1,75 +1,197 @@
 package geekbrains.client;
 
+import geekbrains.authorization.Authenticator;
 import geekbrains.connection.Message;
+import geekbrains.connection.MessageCodec;
 import geekbrains.connection.MessageType;
 import geekbrains.connection.Network;
-import geekbrains.database.SQLService;
 import geekbrains.settings.Settings;
 import geekbrains.sound.MakeSound;
 import geekbrains.validator.Validator;
 
+import javax.swing.*;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Talks to the chat server for the window. Signing in happens in the connect handshake, where the server
+ * checks the credentials, so the client itself never touches the users database.
+ * <p>
+ * Nothing here blocks the Swing event thread: connecting, signing in, renaming and sending run on a task
+ * thread of their own and report back through futures that time out after
+ * {@link Settings#CLIENT_TASK_TIMEOUT_MILLIS}.
+ *
  * @author Abubakar Musanipov
  */
-public class ClientGuiController {
+public class ClientGuiController implements Authenticator {
 
     private Network connection;
     private ClientGuiModel model;
     private ClientGuiView view;
 
     private volatile boolean clientConnected;
-    private String nickname;
-    private boolean isDatabaseConnected;
+    private volatile long oldestMessageId;
+    private volatile long nextHistoryId;
+    private volatile boolean historyRequested;
+    private volatile String nickname;
+    private String password;
+    private String serverAddress;
+    private int serverPort;
+    private boolean signedIn;
+
+    private final ExecutorService tasks = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-client-tasks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<Socket> handshake = new AtomicReference<>();
+    private volatile CompletableFuture<String> pendingRename;
 
     public void run(ClientGuiController clientGuiController) {
         model = new ClientGuiModel();
         view = new ClientGuiView(clientGuiController);
         view.initComponents();
-        while (true) {
-            if (clientGuiController.isClientConnected()) {
-                clientGuiController.userNameRegistration();
-                clientGuiController.receiveMessageFromServer();
-                clientGuiController.setClientConnected(false);
-            }
+    }
+
+    /**
+     * Runs on a reader thread of its own, started for each successful sign in and ending with it.
+     */
+    protected void serveConnection() {
+        receiveMessageFromServer();
+        setClientConnected(false);
+    }
+
+    @Override
+    public CompletableFuture<String> signIn(String nickname, String password) {
+        return startSession(MessageType.NICKNAME, nickname, password);
+    }
+
+    @Override
+    public CompletableFuture<String> register(String nickname, String password) {
+        return startSession(MessageType.REGISTRATION, nickname, password);
+    }
+
+    /**
+     * Runs the connect handshake on the task thread. Cancelling the future or letting it time out closes the
+     * socket the handshake is waiting on, or disconnects again if the server had already let the user in.
+     * Called on the event thread, which is where the server address is asked for the first time.
+     */
+    protected CompletableFuture<String> startSession(MessageType type, String nickname, String password) {
+        if (clientConnected) {
+            return CompletableFuture.completedFuture("You are already connected!");
         }
+        if (serverAddress == null) {
+            serverAddress = view.getServerAddress();
+            serverPort = view.getPort();
+        }
+        String address = serverAddress;
+        int port = serverPort;
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return userNameRegistration(address, port, type, nickname, password);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, tasks).orTimeout(Settings.CLIENT_TASK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        result.whenComplete((failure, error) -> {
+            if (error != null) {
+                abortHandshake();
+            }
+        });
+        return result;
     }
 
-    protected void userNameRegistration() {
-        while (true) {
+    private void abortHandshake() {
+        Socket socket = handshake.getAndSet(null);
+        if (socket != null) {
             try {
-                Message message = connection.receive();
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        } else if (clientConnected) {
+            disableClient();
+        }
+    }
+
+    /**
+     * Connects and answers the server's nickname request with the credentials. On success the connection stays
+     * open and its reader thread is started; otherwise it is closed and the server's reason returned.
+     */
+    protected String userNameRegistration(String address, int port, MessageType type, String nickname, String password) throws IOException {
+        Socket socket = new Socket();
+        handshake.set(socket);
+        Network network = null;
+        try {
+            socket.connect(new InetSocketAddress(address, port), (int) Settings.CLIENT_TASK_TIMEOUT_MILLIS);
+            network = new Network(socket);
+            while (true) {
+                Message message = network.receive();
                 if (message.getTypeMessage() == MessageType.REQUEST_NICKNAME) {
-                    nickname = SQLService.getNickname(nickname);
-                    connection.send(new Message(MessageType.NICKNAME, nickname));
+                    if (MessageCodec.BINARY.getName().equals(message.getTextMessage())) {
+                        network.setCodec(MessageCodec.BINARY);
+                    }
+                    network.send(Message.credentials(type, nickname, password));
                 }
                 if (message.getTypeMessage() == MessageType.NICKNAME_USED) {
-                    view.errorDialogWindow("A user with this name is already in the chat");
-                    disableClient();
-                    break;
+                    network.close();
+                    return "A user with this name is already in the chat";
+                }
+                if (message.getTypeMessage() == MessageType.AUTHENTICATION_FAILED) {
+                    network.close();
+                    return message.getTextMessage();
                 }
                 if (message.getTypeMessage() == MessageType.NICKNAME_ACCEPTED) {
-                    view.addMessage(String.format("Your name is accepted (%s)\n", nickname));
+                    if (!handshake.compareAndSet(socket, null)) {
+                        throw new IOException("Cancelled");
+                    }
+                    this.nickname = nickname;
+                    this.password = password;
                     model.setUsers(message.getListUsers());
-                    break;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                view.errorDialogWindow("An error occurred while registering the name. Try reconnecting");
-                try {
-                    connection.close();
-                    clientConnected = false;
-                    break;
-                } catch (IOException ex) {
-                    view.errorDialogWindow("Error closing connection");
+                    connection = network;
+                    clientConnected = true;
+                    oldestMessageId = 0;
+                    nextHistoryId = 0;
+                    historyRequested = false;
+                    view.refreshListUsers(model.getAllNickname());
+                    new Thread(this::serveConnection, "chat-client-reader").start();
+                    view.addMessage(String.format("You have connected to the server, your name is accepted (%s)\n", nickname));
+                    return null;
                 }
             }
+        } catch (ClassNotFoundException e) {
+            socket.close();
+            throw new IOException(e);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        } finally {
+            handshake.compareAndSet(socket, null);
         }
     }
 
+    /**
+     * Sends on the task thread, so a slow server never stalls the window.
+     */
+    protected void sendInBackground(Message message, String errorText) {
+        Network network = connection;
+        tasks.execute(() -> {
+            try {
+                network.send(message);
+            } catch (IOException e) {
+                view.errorDialogWindow(errorText);
+            }
+        });
+    }
+
     protected void receiveMessageFromServer() {
         while (clientConnected) {
             try {
@@ -89,6 +211,15 @@ public class ClientGuiController {
                 if (message.getTypeMessage() == MessageType.REMOVED_USER) {
                     informAboutDeletingNewUser(message);
                 }
+                if (message.getTypeMessage() == MessageType.HISTORY_PAGE) {
+                    showHistoryPage(message);
+                }
+                if (message.getTypeMessage() == MessageType.SEARCH_RESULTS) {
+                    view.showSearchResults(message);
+                }
+                if (message.getTypeMessage() == MessageType.NICKNAME_USED) {
+                    renameFinished(String.format("Failed to change name, %s is already taken", message.getTextMessage()));
+                }
             } catch (Exception e) {
                 view.errorDialogWindow("An error occurred while receiving a message from the server.");
                 setClientConnected(false);
@@ -106,128 +237,185 @@ public class ClientGuiController {
         this.clientConnected = clientConnected;
     }
 
+    /**
+     * Shows a page of older messages above the log. Messages that already arrived live are skipped, the
+     * server sends the join backlog while the chat keeps flowing.
+     */
+    protected void showHistoryPage(Message message) {
+        List<Message> history = message.getHistory();
+        List<ChatLine> lines = new ArrayList<>(history.size());
+        long oldest = oldestMessageId;
+        for (Message entry : history) {
+            if (oldest == 0 || entry.getId() < oldest) {
+                lines.add(new ChatLine(entry.getTimestamp(), describe(entry)));
+            }
+        }
+        if (!history.isEmpty() && (oldest == 0 || history.get(0).getId() < oldest)) {
+            oldestMessageId = history.get(0).getId();
+        }
+        nextHistoryId = message.getId();
+        historyRequested = false;
+        if (!lines.isEmpty()) {
+            view.prependMessages(lines);
+        }
+    }
+
+    /**
+     * Asks the server for the page before the oldest message shown, unless one is on its way or the
+     * beginning of the history has been reached.
+     */
+    protected void requestOlderHistory() {
+        if (!clientConnected || historyRequested || nextHistoryId == 0) {
+            return;
+        }
+        historyRequested = true;
+        Network network = connection;
+        Message request = Message.historyRequest(Settings.DEFAULT_ROOM, nextHistoryId);
+        tasks.execute(() -> {
+            try {
+                network.send(request);
+            } catch (IOException e) {
+                historyRequested = false;
+            }
+        });
+    }
+
+    protected void searchHistory(String query, long offset) {
+        if (!clientConnected) {
+            view.errorDialogWindow("Connect to the server to search the history.");
+            return;
+        }
+        sendInBackground(Message.searchRequest(Settings.DEFAULT_ROOM, query, offset), "Error sending search request");
+    }
+
+    protected String describe(Message message) {
+        switch (message.getTypeMessage()) {
+            case NICKNAME_CHANGED:
+                return String.format("%s changed nickname to %s\n", message.getSender(), message.getTextMessage());
+            case PRIVATE_TEXT_MESSAGE:
+                return String.format("Private message from (%s): %s\n", message.getSender(), message.getTextMessage());
+            case REMOVED_USER:
+                return String.format("(%s) has left the chat.\n", message.getTextMessage());
+            default:
+                return String.format("%s: %s\n", message.getSender(), message.getTextMessage());
+        }
+    }
+
     protected void informAboutAddingNewUser(Message message) {
         model.addUser(message.getTextMessage());
         MakeSound.playSound(Settings.SOUND_URL_CONNECTED);
-        view.refreshListUsers(model.getAllNickname());
+        view.userJoined(message.getTextMessage());
         view.addMessage(String.format("(%s) has joined the chat.\n", message.getTextMessage()));
     }
 
     protected void informAboutDeletingNewUser(Message message) {
+        noteLiveMessage(message);
         model.deleteUser(message.getTextMessage());
         MakeSound.playSound(Settings.SOUND_URL_DISCONNECT);
-        view.refreshListUsers(model.getAllNickname());
+        view.userLeft(message.getTextMessage());
         view.addMessage(String.format("(%s) has left the chat.\n", message.getTextMessage()));
     }
 
     protected void processingOfPrivateMessagesForSending(Message message) {
-        String[] data = message.getTextMessage().split(" ");
-        StringBuilder formattingForSendingPrivateMessage = new StringBuilder();
-        for (int i = 1; i < data.length - 1; i++) {
-            formattingForSendingPrivateMessage.append(data[i]).append(" ");
-        }
-        view.addMessage(String.format("Private message from (%s): %s\n", data[data.length - 1], formattingForSendingPrivateMessage.toString()));
+        view.addMessage(message.getTimestamp(), describe(message));
     }
 
     protected void notifyNicknameChanged(Message message) {
-        String[] data = message.getTextMessage().split(" ");
-        view.addMessage(message.getTextMessage() + "\n");
-        model.deleteUser(data[0]);
-        model.addUser(data[data.length - 1]);
-        view.refreshListUsers(model.getAllNickname());
+        noteLiveMessage(message);
+        view.addMessage(message.getTimestamp(), describe(message));
+        if (message.getSender().equals(nickname)) {
+            nickname = message.getTextMessage();
+            renameFinished(null);
+        }
+        model.deleteUser(message.getSender());
+        model.addUser(message.getTextMessage());
+        view.userRenamed(message.getSender(), message.getTextMessage());
     }
 
     protected void processIncomingMessage(Message message) {
-        view.addMessage(message.getTextMessage());
+        noteLiveMessage(message);
+        view.addMessage(message.getTimestamp(), describe(message));
     }
 
-    protected void disableClient() {
-        try {
-            if (clientConnected) {
-                connection.send(new Message(MessageType.DISABLE_USER));
-                model.getAllNickname().clear();
-                clientConnected = false;
-                view.refreshListUsers(model.getAllNickname());
-                view.addMessage("You have disconnected from the server.\n");
-            } else {
-                view.errorDialogWindow("You are already disconnected.");
-            }
-        } catch (Exception e) {
-            view.errorDialogWindow("An error occurred while disconnecting.");
+    private void noteLiveMessage(Message message) {
+        if (oldestMessageId == 0 && message.isStamped()) {
+            oldestMessageId = message.getId();
         }
     }
 
-    protected void connectToServer() {
-        if (!clientConnected) {
-            while (true) {
-                try {
-                    connection = new Network(new Socket(view.getServerAddress(), view.getPort()));
-                    clientConnected = true;
-                    view.addMessage("You have connected to the server.\n");
-                    break;
-                } catch (Exception e) {
-                    view.errorDialogWindow("An error has occurred! Perhaps you entered the wrong server address or port. try again");
-                    break;
-                }
-            }
+    protected void disableClient() {
+        if (clientConnected) {
+            sendInBackground(new Message(MessageType.DISABLE_USER), "An error occurred while disconnecting.");
+            model.getAllNickname().clear();
+            clientConnected = false;
+            view.refreshListUsers(model.getAllNickname());
+            view.addMessage("You have disconnected from the server.\n");
         } else {
-            view.errorDialogWindow("You are already connected!");
+            view.errorDialogWindow("You are already disconnected.");
         }
     }
 
-    public void setNickname(String nickname) {
-        this.nickname = nickname;
+    /**
+     * Connects again with the credentials of the last sign in.
+     */
+    protected CompletableFuture<String> connectToServer() {
+        if (clientConnected) {
+            return CompletableFuture.completedFuture("You are already connected!");
+        }
+        return signIn(nickname, password);
     }
 
     protected void sendMessageOnServer(String text) {
-        try {
-            connection.send(new Message(MessageType.TEXT_MESSAGE, text));
-        } catch (Exception e) {
-            view.errorDialogWindow("Error sending message");
-        }
+        sendInBackground(new Message(MessageType.TEXT_MESSAGE, nickname, null, Settings.DEFAULT_ROOM, text), "Error sending message");
     }
 
     protected void sendPrivateMessageOnServer(String userSelected, String text) {
-        try {
-            if (!nickname.equals(userSelected)) {
-                view.addMessage(String.format("Private message sent to user (%s)\n", userSelected));
-                connection.send(new Message(MessageType.PRIVATE_TEXT_MESSAGE, text));
-            } else {
-                view.errorDialogWindow("You cannot send a private message to yourself");
-            }
-        } catch (Exception e) {
-            view.errorDialogWindow("Error sending message");
+        if (!nickname.equals(userSelected)) {
+            view.addMessage(String.format("Private message sent to user (%s)\n", userSelected));
+            sendInBackground(new Message(MessageType.PRIVATE_TEXT_MESSAGE, nickname, userSelected, Settings.DEFAULT_ROOM, text), "Error sending message");
+        } else {
+            view.errorDialogWindow("You cannot send a private message to yourself");
         }
     }
 
-    public void changeNickname() {
-        String newNickname = view.getNickname();
-        if (newNickname != null) {
+    /**
+     * Asks the server to rename the account. The future completes when the server announces the new name (with
+     * null) or refuses it (with the reason), or times out.
+     */
+    public CompletableFuture<String> changeNickname(String newNickname) {
+        if (!Validator.isValidNickname(newNickname)) {
+            return CompletableFuture.completedFuture("Please enter correct data");
+        }
+        if (pendingRename != null && !pendingRename.isDone()) {
+            return CompletableFuture.completedFuture("A name change is already in progress");
+        }
+        CompletableFuture<String> rename = new CompletableFuture<String>().orTimeout(Settings.CLIENT_TASK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        pendingRename = rename;
+        Network network = connection;
+        tasks.execute(() -> {
             try {
-                if (Validator.isValidNickname(newNickname) && SQLService.changeNick(nickname, newNickname)) {
-                    model.deleteUser(nickname);
-                    nickname = newNickname;
-                    model.addUser(newNickname);
-                    view.refreshListUsers(model.getAllNickname());
-                    try {
-                        connection.send(new Message(MessageType.NICKNAME_CHANGED, newNickname));
-                    } catch (IOException e) {
-                        view.errorDialogWindow(e.getMessage());
-                    }
-                } else {
-                    view.errorDialogWindow("Please enter correct data");
-                }
-            } catch (SQLException e) {
-                view.errorDialogWindow("Failed to change name, it looks like a user with this name is already logged in");
+                network.send(new Message(MessageType.NICKNAME_CHANGED, newNickname));
+            } catch (IOException e) {
+                rename.completeExceptionally(e);
             }
+        });
+        return rename;
+    }
+
+    private void renameFinished(String failure) {
+        CompletableFuture<String> rename = pendingRename;
+        if (rename != null && !rename.isDone()) {
+            rename.complete(failure);
+        } else if (failure != null) {
+            view.errorDialogWindow(failure);
         }
     }
 
-    public boolean isDatabaseConnected() {
-        return isDatabaseConnected;
+    public boolean isSignedIn() {
+        return signedIn;
     }
 
-    public void setDatabaseConnected(boolean databaseConnected) {
-        isDatabaseConnected = databaseConnected;
+    public void setSignedIn(boolean signedIn) {
+        this.signedIn = signedIn;
     }
 }
@@ -1,14 +1,17 @@
 package geekbrains.client;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * The users online as the client knows them. The reader thread changes the set while the window thread may
+ * clear or copy it, so it is a concurrent set.
+ *
  * @author Abubakar Musanipov
  */
 public class ClientGuiModel {
 
-    private Set<String> allUserNicknames = new HashSet<>();
+    private volatile Set<String> allUserNicknames = ConcurrentHashMap.newKeySet();
 
     protected Set<String> getAllNickname() {
         return allUserNicknames;
@@ -23,6 +26,10 @@ public class ClientGuiModel {
     }
 
     protected void setUsers(Set<String> users) {
-        this.allUserNicknames = users;
+        Set<String> copy = ConcurrentHashMap.newKeySet();
+        if (users != null) {
+            copy.addAll(users);
+        }
+        this.allUserNicknames = copy;
     }
 }
@@ -1,24 +1,27 @@
 package geekbrains.client;
 
+import geekbrains.authorization.Authenticator;
 import geekbrains.authorization.Login;
 import geekbrains.authorization.Registration;
-import geekbrains.database.SQLService;
+import geekbrains.connection.Message;
 import geekbrains.settings.Settings;
 import geekbrains.sound.MakeSound;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.text.Position;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.sql.SQLException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -31,6 +34,7 @@ public class ClientGuiView extends JFrame {
     private JButton buttonChangeInputColor;
     private JButton buttonChangeName;
     private JButton buttonChatLog;
+    private JButton buttonSearch;
     private JButton buttonConnectionToServer;
     private JButton buttonDisconnectToServer;
     private ButtonGroup buttonGroup;
@@ -41,19 +45,22 @@ public class ClientGuiView extends JFrame {
     private JButton buttonSignOut;
     private JButton buttonSoundOptions;
     private JList<String> listUserOnline;
+    private UserListModel users;
     private JRadioButton radioButtonSendMessageToAll;
     private JRadioButton radioButtonSendPrivateMessageToSelectedUser;
     private JScrollPane scrollPanelForChatLog;
     private JScrollPane scrollPanelForUserListOnline;
-    private JTextArea textAreaChatLog;
+    private JList<ChatLine> listChatLog;
+    private ChatLogModel chatLog;
     private JTextField textFieldUserInputMessage;
 
     private boolean radioButtonCheckPrivateOrNot;
+    private SearchDialog searchDialog;
+    private final UiEventQueue events;
 
     public ClientGuiView(ClientGuiController clientGuiController) {
         this.client = clientGuiController;
-
-        SQLService.getInstance();
+        this.events = new UiEventQueue(Settings.CLIENT_UI_FRAME_MILLIS, this::appendMessages, nicknames -> users.setAll(nicknames));
 
         try {
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
@@ -75,14 +82,33 @@ public class ClientGuiView extends JFrame {
         buttonChangeInputColor = new JButton();
         buttonSoundOptions = new JButton();
         buttonChatLog = new JButton();
+        buttonSearch = new JButton();
         buttonMoveToSystemTray = new JButton();
         buttonSend = new JButton();
         textFieldUserInputMessage = new JTextField();
         scrollPanelForUserListOnline = new JScrollPane();
-        listUserOnline = new JList<>();
+        users = new UserListModel();
+        listUserOnline = new JList<String>(users) {
+            /**
+             * Typing a name in the list jumps to it by binary search instead of testing every row.
+             */
+            @Override
+            public int getNextMatch(String prefix, int startIndex, Position.Bias bias) {
+                int first = users.indexOfPrefix(prefix);
+                if (first < 0) {
+                    return -1;
+                }
+                int end = users.endOfPrefix(prefix);
+                if (startIndex >= first && startIndex < end) {
+                    return startIndex;
+                }
+                return bias == Position.Bias.Forward ? first : end - 1;
+            }
+        };
         buttonConnectionToServer = new JButton();
         scrollPanelForChatLog = new JScrollPane();
-        textAreaChatLog = new JTextArea();
+        chatLog = new ChatLogModel(Settings.CHAT_LOG_RETENTION);
+        listChatLog = new JList<>(chatLog);
         buttonRegistration = new JButton();
         buttonSignIn = new JButton();
         buttonSignOut = new JButton();
@@ -98,13 +124,7 @@ public class ClientGuiView extends JFrame {
                 if (client.isClientConnected()) {
                     client.disableClient();
                 }
-                try {
-                    if (SQLService.isConnected()) {
-                        SQLService.closeConnection();
-                    }
-                } catch (SQLException sqlException) {
-                    errorDialogWindow(sqlException.getMessage());
-                }
+                MakeSound.close();
                 System.exit(0);
             }
         });
@@ -133,15 +153,25 @@ public class ClientGuiView extends JFrame {
         buttonChangeName.setToolTipText("Change name");
         buttonChangeName.setEnabled(false);
         buttonChangeName.addActionListener(e -> {
-            client.changeNickname();
+            String newNickname = getNickname();
+            if (newNickname == null) {
+                return;
+            }
+            buttonChangeName.setEnabled(false);
+            Authenticator.onEventThread(client.changeNickname(newNickname), failure -> {
+                buttonChangeName.setEnabled(client.isClientConnected());
+                if (failure != null) {
+                    errorDialogWindow(failure);
+                }
+            });
         });
 
         buttonChangeInputColor.setIcon(new ImageIcon(Settings.IMAGE_ICON_COLOR_WHEEL));
         buttonChangeInputColor.setToolTipText("Change input color");
         buttonChangeInputColor.addActionListener(e -> {
-            Color color = JColorChooser.showDialog(null, "Choose a Color", textAreaChatLog.getForeground());
+            Color color = JColorChooser.showDialog(null, "Choose a Color", listChatLog.getForeground());
             if (color != null) {
-                textAreaChatLog.setForeground(color);
+                listChatLog.setForeground(color);
             }
         });
 
@@ -161,6 +191,15 @@ public class ClientGuiView extends JFrame {
         buttonChatLog.setToolTipText("Chat log");
         buttonChatLog.addActionListener(e -> saveToFile());
 
+        buttonSearch.setText("Search");
+        buttonSearch.setToolTipText("Search chat history");
+        buttonSearch.addActionListener(e -> {
+            if (searchDialog == null) {
+                searchDialog = new SearchDialog(this, client);
+            }
+            searchDialog.setVisible(true);
+        });
+
         buttonMoveToSystemTray.setIcon(new ImageIcon(Settings.IMAGE_ICON_MOVE_TRAY));
         buttonMoveToSystemTray.setToolTipText("Move to system tray");
         buttonMoveToSystemTray.addActionListener(e -> {
@@ -208,50 +247,53 @@ public class ClientGuiView extends JFrame {
 
         listUserOnline.setToolTipText("User list online");
         listUserOnline.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        listUserOnline.setPrototypeCellValue("x".repeat(Settings.TEXT_AREA_CHAT_LOG_COLUMNS));
+        listUserOnline.setFixedCellHeight(listUserOnline.getFontMetrics(listUserOnline.getFont()).getHeight() + 2);
         scrollPanelForUserListOnline.setViewportView(listUserOnline);
 
-        textAreaChatLog.setEditable(false);
-        textAreaChatLog.setColumns(Settings.TEXT_AREA_CHAT_LOG_COLUMNS);
-        textAreaChatLog.setRows(Settings.TEXT_AREA_CHAT_LOG_ROWS);
-        textAreaChatLog.setToolTipText("Chat log");
-        textAreaChatLog.setFont(new Font(Settings.TEXT_AREA_CHAT_LOG_FONT_NAME, Font.PLAIN, Settings.TEXT_AREA_CHAT_LOG_FONT_SIZE));
-        scrollPanelForChatLog.setViewportView(textAreaChatLog);
+        Font chatLogFont = new Font(Settings.TEXT_AREA_CHAT_LOG_FONT_NAME, Font.PLAIN, Settings.TEXT_AREA_CHAT_LOG_FONT_SIZE);
+        listChatLog.setFont(chatLogFont);
+        listChatLog.setFixedCellHeight(listChatLog.getFontMetrics(chatLogFont).getHeight() + 2);
+        listChatLog.setPrototypeCellValue(new ChatLine(0, "x".repeat(Settings.TEXT_AREA_CHAT_LOG_COLUMNS)));
+        listChatLog.setVisibleRowCount(Settings.TEXT_AREA_CHAT_LOG_ROWS);
+        listChatLog.setToolTipText("Chat log");
+        scrollPanelForChatLog.setViewportView(listChatLog);
+        scrollPanelForChatLog.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == 0 && chatLog.getSize() > 1 && !chatLog.isFull()) {
+                client.requestOlderHistory();
+            }
+        });
 
         buttonRegistration.setIcon(new ImageIcon(Settings.IMAGE_ICON_REGISTRATION));
-        buttonRegistration.setToolTipText("Database registration");
+        buttonRegistration.setToolTipText("Registration");
         buttonRegistration.addActionListener(e -> {
-            if (!client.isDatabaseConnected()) {
-                Registration registration = new Registration(this);
+            if (!client.isSignedIn()) {
+                Registration registration = new Registration(this, client);
                 registration.setVisible(true);
                 if (registration.isSucceeded()) {
-                    client.setNickname(registration.getNickname());
+                    signedIn();
                 }
             }
         });
 
         buttonSignIn.setIcon(new ImageIcon(Settings.IMAGE_ICON_SIGN_IN));
-        buttonSignIn.setToolTipText("Database sign in");
+        buttonSignIn.setToolTipText("Sign in");
         buttonSignIn.addActionListener(e -> {
-            if (!client.isDatabaseConnected()) {
-                Login loginDialog = new Login(this);
+            if (!client.isSignedIn()) {
+                Login loginDialog = new Login(this, client);
                 loginDialog.setVisible(true);
                 if (loginDialog.isSucceeded()) {
-                    client.setNickname(loginDialog.getNickname());
-                    client.setDatabaseConnected(true);
-                    buttonSignIn.setEnabled(false);
-                    buttonSignOut.setEnabled(true);
-                    buttonConnectionToServer.setEnabled(true);
-                    buttonRegistration.setEnabled(false);
+                    signedIn();
                 }
             }
         });
 
         buttonSignOut.setIcon(new ImageIcon(Settings.IMAGE_ICON_SIGN_OUT));
-        buttonSignOut.setToolTipText("Database sign out");
+        buttonSignOut.setToolTipText("Sign out");
         buttonSignOut.setEnabled(false);
         buttonSignOut.addActionListener(e -> {
-            if (client.isDatabaseConnected()) {
-                client.setDatabaseConnected(false);
+            if (client.isSignedIn()) {
+                client.setSignedIn(false);
                 buttonSignOut.setEnabled(false);
                 buttonSignIn.setEnabled(true);
                 radioButtonSendMessageToAll.setEnabled(false);
@@ -272,17 +314,16 @@ public class ClientGuiView extends JFrame {
         buttonConnectionToServer.setToolTipText("Connect to server");
         buttonConnectionToServer.setEnabled(false);
         buttonConnectionToServer.addActionListener(e -> {
-            if (client.isDatabaseConnected()) {
-                client.connectToServer();
-                if (client.isClientConnected()) {
-                    buttonDisconnectToServer.setEnabled(true);
-                    buttonConnectionToServer.setEnabled(false);
-                    buttonChangeName.setEnabled(true);
-                    textFieldUserInputMessage.setEnabled(true);
-                    radioButtonSendMessageToAll.setEnabled(true);
-                    radioButtonSendPrivateMessageToSelectedUser.setEnabled(true);
-                    buttonSend.setEnabled(true);
-                }
+            if (client.isSignedIn()) {
+                buttonConnectionToServer.setEnabled(false);
+                Authenticator.onEventThread(client.connectToServer(), failure -> {
+                    if (failure == null) {
+                        connected();
+                    } else {
+                        buttonConnectionToServer.setEnabled(client.isSignedIn());
+                        errorDialogWindow(failure);
+                    }
+                });
             }
         });
 
@@ -331,6 +372,8 @@ public class ClientGuiView extends JFrame {
                                                 .addGap(0, 0, 0)
                                                 .addComponent(buttonChatLog, GroupLayout.PREFERRED_SIZE, 50, GroupLayout.PREFERRED_SIZE)
                                                 .addGap(0, 0, 0)
+                                                .addComponent(buttonSearch)
+                                                .addGap(0, 0, 0)
                                                 .addComponent(buttonMoveToSystemTray, GroupLayout.PREFERRED_SIZE, 50, GroupLayout.PREFERRED_SIZE)
                                                 .addGap(0, 0, 0)
                                                 .addComponent(buttonSend, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
@@ -371,6 +414,7 @@ public class ClientGuiView extends JFrame {
                                                 .addComponent(buttonSignIn)
                                                 .addComponent(buttonSignOut))
                                         .addComponent(buttonChatLog, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+                                        .addComponent(buttonSearch, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
                                         .addComponent(buttonMoveToSystemTray, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
                                         .addComponent(buttonChangeName, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE))
                                 .addGap(5, 5, 5))
@@ -379,28 +423,96 @@ public class ClientGuiView extends JFrame {
         setVisible(true);
     }
 
+    /**
+     * A successful sign in or registration leaves the client connected as well.
+     */
+    private void signedIn() {
+        client.setSignedIn(true);
+        buttonSignIn.setEnabled(false);
+        buttonSignOut.setEnabled(true);
+        buttonRegistration.setEnabled(false);
+        connected();
+    }
+
+    private void connected() {
+        buttonDisconnectToServer.setEnabled(true);
+        buttonConnectionToServer.setEnabled(false);
+        buttonChangeName.setEnabled(true);
+        textFieldUserInputMessage.setEnabled(true);
+        radioButtonSendMessageToAll.setEnabled(true);
+        radioButtonSendPrivateMessageToSelectedUser.setEnabled(true);
+        buttonSend.setEnabled(true);
+    }
+
     protected void addMessage(String text) {
-        textAreaChatLog.append("[" + LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] " + text);
+        addMessage(System.currentTimeMillis(), text);
+    }
+
+    /**
+     * May be called from any thread; the line shows up with the next batch of UI events.
+     */
+    protected void addMessage(long timestamp, String text) {
+        events.postLine(new ChatLine(timestamp, text));
         MakeSound.playSound(Settings.SOUND_URL_NEW_MESSAGE);
     }
 
-    protected void refreshListUsers(Set<String> allUserNicknames) {
-        StringBuilder text = new StringBuilder();
-        for (String user : allUserNicknames) {
-            text.append(user).append("\n");
+    private void appendMessages(List<ChatLine> lines) {
+        boolean following = isScrolledToEnd();
+        chatLog.appendAll(lines);
+        if (following) {
+            listChatLog.ensureIndexIsVisible(chatLog.getSize() - 1);
         }
-        String[] strings = text.toString().split("\n");
-        listUserOnline.setModel(new AbstractListModel<String>() {
-            public int getSize() {
-                return allUserNicknames.size();
+    }
+
+    private boolean isScrolledToEnd() {
+        JScrollBar scrollBar = scrollPanelForChatLog.getVerticalScrollBar();
+        return scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum() - listChatLog.getFixedCellHeight();
+    }
+
+    /**
+     * Puts older lines above the log, keeping the lines the user is looking at in place.
+     */
+    protected void prependMessages(List<ChatLine> lines) {
+        events.post(() -> {
+            JScrollBar scrollBar = scrollPanelForChatLog.getVerticalScrollBar();
+            int value = scrollBar.getValue();
+            int added = chatLog.prepend(lines);
+            if (added > 0) {
+                listChatLog.revalidate();
+                SwingUtilities.invokeLater(() -> scrollBar.setValue(value + added * listChatLog.getFixedCellHeight()));
             }
+        });
+    }
 
-            public String getElementAt(int i) {
-                return strings[i];
+    protected void showSearchResults(Message message) {
+        events.post(() -> {
+            if (searchDialog != null) {
+                searchDialog.showResults(message);
             }
         });
     }
 
+    /**
+     * Replaces the whole list, for a new connection or a disconnect. May be called from any thread. The names
+     * are copied right away, since the set keeps changing on the reader thread, and only the newest of several
+     * replacements in a batch is shown.
+     */
+    protected void refreshListUsers(Set<String> allUserNicknames) {
+        events.postUserList(new ArrayList<>(allUserNicknames));
+    }
+
+    protected void userJoined(String nickname) {
+        events.post(() -> users.add(nickname));
+    }
+
+    protected void userLeft(String nickname) {
+        events.post(() -> users.remove(nickname));
+    }
+
+    protected void userRenamed(String oldNickname, String newNickname) {
+        events.post(() -> users.rename(oldNickname, newNickname));
+    }
+
     protected String getServerAddress() {
         while (true) {
             return JOptionPane.showInputDialog(this, "Enter the server address:", "Server address input", JOptionPane.QUESTION_MESSAGE).trim();
@@ -423,7 +535,10 @@ public class ClientGuiView extends JFrame {
     }
 
     protected void errorDialogWindow(String text) {
-
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> errorDialogWindow(text));
+            return;
+        }
         JOptionPane.showMessageDialog(this, text, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
@@ -435,8 +550,16 @@ public class ClientGuiView extends JFrame {
                 if (!file.getName().toLowerCase().endsWith(".txt")) {
                     file = new File(file.getParentFile(), file.getName() + ".txt");
                 }
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                    for (int i = 0; i < chatLog.getSize(); i++) {
+                        writer.write(chatLog.getElementAt(i).toString());
+                        writer.write(System.lineSeparator());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
                 try {
-                    textAreaChatLog.write(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
                     Desktop.getDesktop().open(file);
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -0,0 +1,128 @@
+package geekbrains.client;
+
+import geekbrains.connection.Message;
+
+import javax.swing.*;
+import javax.swing.border.LineBorder;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Searches the chat history on the server. The words and filters are sent as one query string; results come
+ * back a page at a time and "More" asks for the next one.
+ *
+ * @author Abubakar Musanipov
+ */
+public class SearchDialog extends JDialog {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private final ClientGuiView view;
+    private final ClientGuiController client;
+    private final JTextField textFieldWords;
+    private final JTextField textFieldSender;
+    private final JTextField textFieldAfter;
+    private final JTextField textFieldBefore;
+    private final JLabel labelStatus;
+    private final DefaultListModel<String> results = new DefaultListModel<>();
+    private final JButton buttonMore;
+    private String query;
+    private long nextOffset;
+
+    public SearchDialog(ClientGuiView view, ClientGuiController client) {
+        super(view, "Search history", false);
+        this.view = view;
+        this.client = client;
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.fill = GridBagConstraints.HORIZONTAL;
+
+        textFieldWords = addField(panel, gridBagConstraints, 0, "Words: ");
+        textFieldSender = addField(panel, gridBagConstraints, 1, "From user: ");
+        textFieldAfter = addField(panel, gridBagConstraints, 2, "After (yyyy-MM-dd): ");
+        textFieldBefore = addField(panel, gridBagConstraints, 3, "Before (yyyy-MM-dd): ");
+        panel.setBorder(new LineBorder(Color.GRAY));
+
+        JList<String> listResults = new JList<>(results);
+        JScrollPane scrollPanelForResults = new JScrollPane(listResults);
+        scrollPanelForResults.setPreferredSize(new Dimension(520, 240));
+
+        JButton buttonSearch = new JButton("Search");
+        buttonSearch.addActionListener(e -> search());
+        textFieldWords.addActionListener(e -> search());
+        buttonMore = new JButton("More");
+        buttonMore.setEnabled(false);
+        buttonMore.addActionListener(e -> {
+            buttonMore.setEnabled(false);
+            client.searchHistory(query, nextOffset);
+        });
+        JButton buttonClose = new JButton("Close");
+        buttonClose.addActionListener(e -> setVisible(false));
+        labelStatus = new JLabel(" ");
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(labelStatus);
+        buttonPanel.add(buttonSearch);
+        buttonPanel.add(buttonMore);
+        buttonPanel.add(buttonClose);
+
+        getContentPane().add(panel, BorderLayout.PAGE_START);
+        getContentPane().add(scrollPanelForResults, BorderLayout.CENTER);
+        getContentPane().add(buttonPanel, BorderLayout.PAGE_END);
+        pack();
+        setLocationRelativeTo(view);
+    }
+
+    private static JTextField addField(JPanel panel, GridBagConstraints gridBagConstraints, int row, String label) {
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = row;
+        gridBagConstraints.gridwidth = 1;
+        panel.add(new JLabel(label), gridBagConstraints);
+        JTextField textField = new JTextField(30);
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridwidth = 2;
+        panel.add(textField, gridBagConstraints);
+        return textField;
+    }
+
+    private void search() {
+        String words = textFieldWords.getText().trim();
+        if (words.isEmpty()) {
+            view.errorDialogWindow("Enter the words to search for");
+            return;
+        }
+        StringBuilder text = new StringBuilder(words);
+        appendFilter(text, "from:", textFieldSender.getText());
+        appendFilter(text, "after:", textFieldAfter.getText());
+        appendFilter(text, "before:", textFieldBefore.getText());
+        query = text.toString();
+        results.clear();
+        buttonMore.setEnabled(false);
+        labelStatus.setText("Searching...");
+        client.searchHistory(query, 0);
+    }
+
+    private static void appendFilter(StringBuilder text, String key, String value) {
+        if (!value.trim().isEmpty()) {
+            text.append(' ').append(key).append(value.trim());
+        }
+    }
+
+    /**
+     * Adds a page of results; pages answering an older query are ignored.
+     */
+    protected void showResults(Message message) {
+        if (!message.getTextMessage().equals(query)) {
+            return;
+        }
+        List<Message> hits = message.getHistory();
+        for (Message hit : hits) {
+            results.addElement("[" + DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(hit.getTimestamp())) + "] " + client.describe(hit).trim());
+        }
+        nextOffset = message.getId();
+        buttonMore.setEnabled(nextOffset != 0);
+        labelStatus.setText(results.isEmpty() ? "Nothing found" : results.size() + " found");
+    }
+}
@@ -0,0 +1,152 @@
+package geekbrains.client;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carries what the reader thread receives over to the event thread. Everything posted within one frame
+ * interval is handed over in a single {@code invokeLater}: consecutive chat lines are appended to the log
+ * together and the user list updates of a batch collapse into the last one, so a burst of messages or joins
+ * costs one repaint per frame instead of one per message.
+ *
+ * @author Abubakar Musanipov
+ */
+public class UiEventQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(UiEventQueue.class.getName());
+
+    private final long frameMillis;
+    private final Consumer<List<ChatLine>> lineSink;
+    private final Consumer<List<String>> userListSink;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-ui-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong dispatches = new AtomicLong();
+    private final AtomicLong collapsedUserLists = new AtomicLong();
+
+    private List<Object> pending = new ArrayList<>();
+    private int pendingUserList = -1;
+    private boolean scheduled;
+
+    /**
+     * @param lineSink     appends a run of chat lines to the log, on the event thread
+     * @param userListSink shows the users online, on the event thread
+     */
+    public UiEventQueue(long frameMillis, Consumer<List<ChatLine>> lineSink, Consumer<List<String>> userListSink) {
+        this.frameMillis = frameMillis;
+        this.lineSink = lineSink;
+        this.userListSink = userListSink;
+    }
+
+    public void postLine(ChatLine line) {
+        post(line);
+    }
+
+    /**
+     * Posts the users online. An update still waiting in the same batch is dropped, the newest one says it all.
+     */
+    public void postUserList(List<String> users) {
+        post(new UserList(users));
+    }
+
+    /**
+     * Posts anything else that has to run on the event thread, in order with the lines and user lists.
+     */
+    public void post(Runnable task) {
+        post((Object) task);
+    }
+
+    private void post(Object event) {
+        posted.incrementAndGet();
+        boolean schedule;
+        synchronized (this) {
+            if (event instanceof UserList) {
+                if (pendingUserList >= 0) {
+                    pending.set(pendingUserList, null);
+                    collapsedUserLists.incrementAndGet();
+                }
+                pendingUserList = pending.size();
+            }
+            pending.add(event);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            timer.schedule(() -> SwingUtilities.invokeLater(this::dispatch), frameMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch() {
+        List<Object> events;
+        synchronized (this) {
+            events = pending;
+            pending = new ArrayList<>();
+            pendingUserList = -1;
+            scheduled = false;
+        }
+        dispatches.incrementAndGet();
+        List<ChatLine> lines = new ArrayList<>();
+        for (Object event : events) {
+            if (event == null) {
+                continue;
+            }
+            if (event instanceof ChatLine) {
+                lines.add((ChatLine) event);
+                continue;
+            }
+            flushLines(lines);
+            if (event instanceof UserList) {
+                userListSink.accept(((UserList) event).users);
+            } else {
+                ((Runnable) event).run();
+            }
+        }
+        flushLines(lines);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Dispatched %d UI events in one batch, %d coalesced so far", events.size(), getCoalescedEvents()));
+        }
+    }
+
+    private void flushLines(List<ChatLine> lines) {
+        if (!lines.isEmpty()) {
+            lineSink.accept(new ArrayList<>(lines));
+            lines.clear();
+        }
+    }
+
+    /**
+     * How many posted events did not need a hand-over of their own, whether they rode along in a batch or were
+     * replaced by a newer user list.
+     */
+    public long getCoalescedEvents() {
+        return posted.get() - dispatches.get();
+    }
+
+    public long getCollapsedUserLists() {
+        return collapsedUserLists.get();
+    }
+
+    public long getDispatches() {
+        return dispatches.get();
+    }
+
+    private static final class UserList {
+
+        private final List<String> users;
+
+        UserList(List<String> users) {
+            this.users = users;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package geekbrains.client;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The users online, kept sorted by name ignoring case. A join, leave or rename finds its row by binary search
+ * and fires an event for that row alone, so the list keeps its selection and repaints only what moved. Must be
+ * used on the event thread.
+ *
+ * @author Abubakar Musanipov
+ */
+public class UserListModel extends AbstractListModel<String> {
+
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private final List<String> users = new ArrayList<>();
+
+    @Override
+    public int getSize() {
+        return users.size();
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return users.get(index);
+    }
+
+    /**
+     * Replaces everyone at once, for a new connection or a disconnect.
+     */
+    public void setAll(Collection<String> nicknames) {
+        if (!users.isEmpty()) {
+            int last = users.size() - 1;
+            users.clear();
+            fireIntervalRemoved(this, 0, last);
+        }
+        users.addAll(nicknames);
+        users.sort(ORDER);
+        if (!users.isEmpty()) {
+            fireIntervalAdded(this, 0, users.size() - 1);
+        }
+    }
+
+    public void add(String nickname) {
+        int index = indexOf(nickname);
+        if (index < 0) {
+            index = -index - 1;
+            users.add(index, nickname);
+            fireIntervalAdded(this, index, index);
+        }
+    }
+
+    public void remove(String nickname) {
+        int index = indexOf(nickname);
+        if (index >= 0) {
+            users.remove(index);
+            fireIntervalRemoved(this, index, index);
+        }
+    }
+
+    /**
+     * Renames in place when the new name sorts to the same row, otherwise moves the row.
+     */
+    public void rename(String oldNickname, String newNickname) {
+        int from = indexOf(oldNickname);
+        if (from < 0) {
+            add(newNickname);
+            return;
+        }
+        int to = indexOf(newNickname);
+        if (to >= 0) {
+            remove(oldNickname);
+            return;
+        }
+        to = -to - 1;
+        if (to == from || to == from + 1) {
+            users.set(from, newNickname);
+            fireContentsChanged(this, from, from);
+        } else {
+            remove(oldNickname);
+            add(newNickname);
+        }
+    }
+
+    /**
+     * The binary search result for the name: its row, or {@code -(insertion point) - 1} if it is not there.
+     */
+    public int indexOf(String nickname) {
+        int low = 0;
+        int high = users.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = ORDER.compare(users.get(middle), nickname);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * The first row whose name starts with the prefix, ignoring case, or -1. All such rows follow one another,
+     * up to {@link #endOfPrefix}.
+     */
+    public int indexOfPrefix(String prefix) {
+        int index = lowerBound(prefix);
+        return index < users.size() && startsWith(users.get(index), prefix) ? index : -1;
+    }
+
+    /**
+     * The row after the last name starting with the prefix.
+     */
+    public int endOfPrefix(String prefix) {
+        int low = lowerBound(prefix);
+        int high = users.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startsWith(users.get(middle), prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = users.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(users.get(middle), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean startsWith(String nickname, String prefix) {
+        return nickname.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
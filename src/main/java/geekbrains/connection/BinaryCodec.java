@@ -0,0 +1,182 @@
+package geekbrains.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compact payload layout: a one byte {@link MessageType} tag, a byte of flags naming the fields that follow,
+ * then each present field. Strings are a varint byte count followed by UTF-8, the user list is a varint
+ * count followed by that many strings, the server id and timestamp are varints. A history page holds a
+ * varint count followed by that many messages in this same layout; those entries cannot hold a history of their
+ * own, so decoding never nests deeper than one page whatever the bytes say.
+ *
+ * @author Abubakar Musanipov
+ */
+public class BinaryCodec implements MessageCodec {
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private static final int HAS_TEXT = 1;
+    private static final int HAS_USERS = 1 << 1;
+    private static final int HAS_SENDER = 1 << 2;
+    private static final int HAS_RECIPIENT = 1 << 3;
+    private static final int HAS_ROOM = 1 << 4;
+    private static final int HAS_STAMP = 1 << 5;
+    private static final int HAS_HISTORY = 1 << 6;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void encode(Message message, OutputStream out) throws IOException {
+        String sender = message.getSender();
+        String recipient = message.getRecipient();
+        String room = message.getRoom();
+        String text = message.getTextMessage();
+        Set<String> users = message.getListUsers();
+        List<Message> history = message.getHistory();
+        boolean stamped = message.getId() != 0 || message.getTimestamp() != 0;
+        int flags = (text != null ? HAS_TEXT : 0)
+                | (users != null ? HAS_USERS : 0)
+                | (sender != null ? HAS_SENDER : 0)
+                | (recipient != null ? HAS_RECIPIENT : 0)
+                | (room != null ? HAS_ROOM : 0)
+                | (stamped ? HAS_STAMP : 0)
+                | (history != null ? HAS_HISTORY : 0);
+        out.write(message.getTypeMessage().ordinal());
+        out.write(flags);
+        if (sender != null) {
+            writeString(sender, out);
+        }
+        if (recipient != null) {
+            writeString(recipient, out);
+        }
+        if (room != null) {
+            writeString(room, out);
+        }
+        if (text != null) {
+            writeString(text, out);
+        }
+        if (users != null) {
+            MessageFrames.writeVarint(users.size(), out);
+            for (String user : users) {
+                writeString(user, out);
+            }
+        }
+        if (stamped) {
+            writeVarlong(message.getId(), out);
+            writeVarlong(message.getTimestamp(), out);
+        }
+        if (history != null) {
+            MessageFrames.writeVarint(history.size(), out);
+            for (Message entry : history) {
+                if (entry.getHistory() != null) {
+                    throw new IOException("A history entry cannot hold a history");
+                }
+                encode(entry, out);
+            }
+        }
+    }
+
+    @Override
+    public Message decode(byte[] payload, int offset, int length) throws IOException {
+        return decode(ByteBuffer.wrap(payload, offset, length), false);
+    }
+
+    private Message decode(ByteBuffer in, boolean historyEntry) throws IOException {
+        if (in.remaining() < 2) {
+            throw new IOException("Truncated message");
+        }
+        int tag = in.get();
+        if (tag < 0 || tag >= TYPES.length) {
+            throw new IOException("Unknown message type: " + tag);
+        }
+        MessageType type = TYPES[tag];
+        int flags = in.get();
+        if (historyEntry && (flags & HAS_HISTORY) != 0) {
+            throw new IOException("A history entry cannot hold a history");
+        }
+        String sender = (flags & HAS_SENDER) != 0 ? readString(in) : null;
+        String recipient = (flags & HAS_RECIPIENT) != 0 ? readString(in) : null;
+        String room = (flags & HAS_ROOM) != 0 ? readString(in) : null;
+        String text = (flags & HAS_TEXT) != 0 ? readString(in) : null;
+        Set<String> users = null;
+        if ((flags & HAS_USERS) != 0) {
+            int count = readVarint(in);
+            users = new HashSet<>(Math.max(16, (int) (count / .75f) + 1));
+            for (int i = 0; i < count; i++) {
+                users.add(readString(in));
+            }
+        }
+        long id = 0;
+        long timestamp = 0;
+        if ((flags & HAS_STAMP) != 0) {
+            id = readVarlong(in);
+            timestamp = readVarlong(in);
+        }
+        List<Message> history = null;
+        if ((flags & HAS_HISTORY) != 0) {
+            int count = readVarint(in);
+            history = new ArrayList<>(Math.min(count, in.remaining() / 2));
+            for (int i = 0; i < count; i++) {
+                history.add(decode(in, true));
+            }
+        }
+        return new Message(type, sender, recipient, room, text, users, id, timestamp, history);
+    }
+
+    private static void writeString(String value, OutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        MessageFrames.writeVarint(bytes.length, out);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readVarint(in);
+        if (length > in.remaining()) {
+            throw new IOException("Truncated message");
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarlong(long value, OutputStream out) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("Truncated message");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = MessageFrames.readLength(in);
+        if (value < 0) {
+            throw new IOException("Truncated message");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,27 @@
+package geekbrains.connection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * @author Abubakar Musanipov
+ */
+public interface Connection extends Closeable {
+
+    default void send(Message message) throws IOException {
+        send(new Frame(message));
+    }
+
+    void send(Frame frame) throws IOException;
+
+    SocketAddress getRemoteAddress();
+
+    default int getOutboundQueueDepth() {
+        return 0;
+    }
+
+    default long getDroppedMessages() {
+        return 0;
+    }
+}
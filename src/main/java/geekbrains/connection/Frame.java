@@ -0,0 +1,55 @@
+package geekbrains.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A message together with its encoded bytes. Each codec encodes the message at most once and the same bytes
+ * are then written to every recipient using that codec, which is what makes a broadcast cost one encoding
+ * instead of one per user.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class Frame {
+
+    private final Message message;
+    private volatile ByteBuffer serializationBytes;
+    private volatile ByteBuffer binaryBytes;
+
+    public Frame(Message message) {
+        this.message = message;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns a read-only view of the encoded frame with its own position, so callers can consume it
+     * independently of each other.
+     */
+    public ByteBuffer encoded(MessageCodec codec) throws IOException {
+        return bytes(codec).asReadOnlyBuffer();
+    }
+
+    void writeTo(OutputStream out, MessageCodec codec) throws IOException {
+        ByteBuffer bytes = bytes(codec);
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    }
+
+    private ByteBuffer bytes(MessageCodec codec) throws IOException {
+        if (codec == MessageCodec.BINARY) {
+            ByteBuffer bytes = binaryBytes;
+            if (bytes == null) {
+                binaryBytes = bytes = MessageFrames.encode(message, codec);
+            }
+            return bytes;
+        }
+        ByteBuffer bytes = serializationBytes;
+        if (bytes == null) {
+            serializationBytes = bytes = MessageFrames.encode(message, codec);
+        }
+        return bytes;
+    }
+}
@@ -1,6 +1,7 @@
 package geekbrains.connection;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -8,32 +9,99 @@ import java.util.Set;
  */
 public class Message implements Serializable {
 
+    private static final long serialVersionUID = 1L;
+
     private final MessageType typeMessage;
     private final String textMessage;
     private final Set<String> listUsers;
+    private final String sender;
+    private final String recipient;
+    private final String room;
+    private final long id;
+    private final long timestamp;
+    private final List<Message> history;
 
     public Message(MessageType typeMessage, String textMessage) {
-        this.textMessage = textMessage;
-        this.typeMessage = typeMessage;
-        this.listUsers = null;
+        this(typeMessage, null, null, null, textMessage, null, 0, 0);
     }
 
     public Message(MessageType typeMessage, Set<String> listUsers) {
-        this.typeMessage = typeMessage;
-        this.textMessage = null;
-        this.listUsers = listUsers;
+        this(typeMessage, null, null, null, null, listUsers, 0, 0);
     }
 
     public Message(MessageType typeMessage) {
-        this.typeMessage = typeMessage;
-        this.textMessage = null;
-        this.listUsers = null;
+        this(typeMessage, null, null, null, null, null, 0, 0);
+    }
+
+    public Message(MessageType typeMessage, String sender, String recipient, String room, String textMessage) {
+        this(typeMessage, sender, recipient, room, textMessage, null, 0, 0);
+    }
+
+    public Message(MessageType typeMessage, String sender, String recipient, String room, String textMessage,
+                   Set<String> listUsers, long id, long timestamp) {
+        this(typeMessage, sender, recipient, room, textMessage, listUsers, id, timestamp, null);
     }
 
-    public Message(MessageType typeMessage, String[] text) {
+    Message(MessageType typeMessage, String sender, String recipient, String room, String textMessage,
+            Set<String> listUsers, long id, long timestamp, List<Message> history) {
         this.typeMessage = typeMessage;
-        this.textMessage = text[0] + " " + text[1];
-        this.listUsers = null;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.room = room;
+        this.textMessage = textMessage;
+        this.listUsers = listUsers;
+        this.id = id;
+        this.timestamp = timestamp;
+        this.history = history;
+    }
+
+    /**
+     * The reply to {@link MessageType#REQUEST_NICKNAME}: {@link MessageType#NICKNAME} to sign in or
+     * {@link MessageType#REGISTRATION} to create the account first, with the nickname as sender and the password
+     * as text.
+     */
+    public static Message credentials(MessageType type, String nickname, String password) {
+        return new Message(type, nickname, null, null, password);
+    }
+
+    /**
+     * Asks for the page of room history right before the message with the given id, or for the latest page
+     * when the id is 0.
+     */
+    public static Message historyRequest(String room, long beforeId) {
+        return new Message(MessageType.HISTORY_REQUEST, null, null, room, null, null, beforeId, 0);
+    }
+
+    /**
+     * A page of history ordered oldest first. The id is the cursor for the next older page, 0 when there is
+     * nothing older.
+     */
+    public static Message historyPage(String room, List<Message> history, long nextBeforeId) {
+        return new Message(MessageType.HISTORY_PAGE, null, null, room, null, null, nextBeforeId, 0, history);
+    }
+
+    /**
+     * Asks for one page of full-text search results. Besides words the query may hold {@code from:<nickname>},
+     * {@code after:<yyyy-MM-dd>} and {@code before:<yyyy-MM-dd>} filters; the id is the offset of the page.
+     */
+    public static Message searchRequest(String room, String query, long offset) {
+        return new Message(MessageType.SEARCH_REQUEST, null, null, room, query, null, offset, 0);
+    }
+
+    /**
+     * Search hits, best match first, with the query they answer. The id is the offset of the next page, 0 when
+     * there are no more hits.
+     */
+    public static Message searchResults(String room, String query, List<Message> results, long nextOffset) {
+        return new Message(MessageType.SEARCH_RESULTS, null, null, room, query, null, nextOffset, 0, results);
+    }
+
+    /**
+     * Returns a copy carrying the server-assigned id and epoch-millis time, set once when the server accepts
+     * the message.
+     */
+    public Message withServerStamp(long id, long timestamp) {
+        return new Message(typeMessage, sender, recipient, room, textMessage, listUsers, id, timestamp, history);
     }
 
     public MessageType getTypeMessage() {
@@ -47,4 +115,32 @@ public class Message implements Serializable {
     public String getTextMessage() {
         return textMessage;
     }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<Message> getHistory() {
+        return history;
+    }
+
+    public boolean isStamped() {
+        return id != 0;
+    }
 }
@@ -0,0 +1,29 @@
+package geekbrains.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the payload of a frame. The two codecs can be told apart by the first payload byte, so every
+ * frame is decoded with the codec that wrote it no matter what the connection has negotiated.
+ *
+ * @author Abubakar Musanipov
+ */
+public interface MessageCodec {
+
+    MessageCodec SERIALIZATION = new SerializationCodec();
+    MessageCodec BINARY = new BinaryCodec();
+
+    String getName();
+
+    void encode(Message message, OutputStream out) throws IOException;
+
+    Message decode(byte[] payload, int offset, int length) throws IOException, ClassNotFoundException;
+
+    static MessageCodec forPayload(byte[] payload, int offset, int length) throws IOException {
+        if (length == 0) {
+            throw new IOException("Empty frame");
+        }
+        return payload[offset] == SerializationCodec.STREAM_MAGIC_FIRST_BYTE ? SERIALIZATION : BINARY;
+    }
+}
@@ -0,0 +1,111 @@
+package geekbrains.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Every message travels as a self-contained frame: a varint payload length followed by the payload written
+ * by a {@link MessageCodec}. Frames do not share stream state, so they can be decoded from any buffer
+ * boundary by blocking and non-blocking endpoints alike.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class MessageFrames {
+
+    public static final int MAX_HEADER_LENGTH = 5;
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private MessageFrames() {
+    }
+
+    public static ByteBuffer encode(Message message, MessageCodec codec) throws IOException {
+        FrameOutput out = new FrameOutput();
+        codec.encode(message, out);
+        return out.toFrame();
+    }
+
+    /**
+     * Reads a varint length, advancing the buffer past it. Returns -1 and leaves the buffer untouched when
+     * the length is not complete yet.
+     */
+    public static int readLength(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_HEADER_LENGTH; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return -1;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return checkLength(value);
+            }
+        }
+        throw new IOException("Malformed frame length");
+    }
+
+    public static int readLength(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_HEADER_LENGTH; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return checkLength(value);
+            }
+        }
+        throw new IOException("Malformed frame length");
+    }
+
+    public static void writeVarint(int value, OutputStream out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    public static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Collects the payload after room reserved for the longest header, then writes the real header right
+     * before the payload, so a frame is built without copying the payload.
+     */
+    private static final class FrameOutput extends ByteArrayOutputStream {
+
+        FrameOutput() {
+            super(128);
+            count = MAX_HEADER_LENGTH;
+        }
+
+        ByteBuffer toFrame() throws IOException {
+            int length = checkLength(count - MAX_HEADER_LENGTH);
+            int start = MAX_HEADER_LENGTH - varintLength(length);
+            int position = start;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                buf[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[position] = (byte) value;
+            return ByteBuffer.wrap(buf, start, count - start).slice();
+        }
+    }
+}
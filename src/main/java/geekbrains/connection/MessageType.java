@@ -14,4 +14,10 @@ public enum MessageType {
     REMOVED_USER,
     PRIVATE_TEXT_MESSAGE,
     NICKNAME_CHANGED,
+    HISTORY_REQUEST,
+    HISTORY_PAGE,
+    SEARCH_REQUEST,
+    SEARCH_RESULTS,
+    REGISTRATION,
+    AUTHENTICATION_FAILED,
 }
@@ -1,38 +1,76 @@
 package geekbrains.connection;
 
-import java.io.Closeable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author Abubakar Musanipov
  */
-public class Network implements Closeable {
+public class Network implements Connection {
 
     private final Socket socket;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final ReentrantLock receiveLock = new ReentrantLock();
+    private volatile MessageCodec codec = MessageCodec.SERIALIZATION;
 
     public Network(Socket socket) throws IOException {
         this.socket = socket;
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in = new ObjectInputStream(socket.getInputStream());
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
     }
 
-    public void send(Message message) throws IOException {
-        synchronized (this.out) {
-            out.writeObject(message);
+    @Override
+    public void send(Frame frame) throws IOException {
+        MessageCodec codec = this.codec;
+        sendLock.lock();
+        try {
+            frame.writeTo(out, codec);
+            out.flush();
+        } finally {
+            sendLock.unlock();
         }
     }
 
     public Message receive() throws IOException, ClassNotFoundException {
-        synchronized (this.in) {
-            return (Message) in.readObject();
+        receiveLock.lock();
+        try {
+            byte[] payload = new byte[MessageFrames.readLength(in)];
+            in.readFully(payload);
+            MessageCodec payloadCodec = MessageCodec.forPayload(payload, 0, payload.length);
+            if (payloadCodec == MessageCodec.BINARY) {
+                codec = MessageCodec.BINARY;
+            }
+            return payloadCodec.decode(payload, 0, payload.length);
+        } finally {
+            receiveLock.unlock();
         }
     }
 
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Both ends start with serialization; once either side sends a binary frame the other answers in binary
+     * too, so a connection never downgrades after the handshake.
+     */
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return socket.getRemoteSocketAddress();
+    }
+
     @Override
     public void close() throws IOException {
         in.close();
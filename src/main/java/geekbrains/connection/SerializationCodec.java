@@ -0,0 +1,50 @@
+package geekbrains.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+
+/**
+ * Java serialization of a whole {@link Message}. Kept for peers that did not negotiate the binary codec. Decoding
+ * accepts only the classes a message is made of and at most a history page of messages, the same as the binary
+ * codec, so a crafted stream can neither load other classes nor nest deep enough to exhaust the stack.
+ *
+ * @author Abubakar Musanipov
+ */
+public class SerializationCodec implements MessageCodec {
+
+    static final byte STREAM_MAGIC_FIRST_BYTE = (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8);
+
+    /**
+     * A history page is a message holding a list of messages holding a set of strings: six levels, with room
+     * to spare for the collections' own fields. A hash set checks its table as an array of {@code Map.Entry}.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;geekbrains.connection.Message;geekbrains.connection.MessageType;java.lang.Enum;"
+                    + "java.util.ArrayList;java.util.HashSet;java.util.LinkedHashSet;java.util.TreeSet;java.util.Map$Entry;java.util.Collections$*;java.util.ImmutableCollections$*;java.util.CollSer;"
+                    + "java.lang.String;java.lang.Object;!*");
+
+    @Override
+    public String getName() {
+        return "serialization";
+    }
+
+    @Override
+    public void encode(Message message, OutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(message);
+        objectOut.flush();
+    }
+
+    @Override
+    public Message decode(byte[] payload, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length))) {
+            in.setObjectInputFilter(FILTER);
+            return (Message) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package geekbrains.database;
+
+import geekbrains.metrics.Counter;
+import geekbrains.metrics.Histogram;
+import geekbrains.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of database connections lent out one thread at a time. Each connection keeps its own prepared
+ * statements, so a statement is only ever used by the thread holding its connection.
+ *
+ * @author Abubakar Musanipov
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private static final Histogram BORROW_WAIT = MetricsRegistry.shared().histogram("chat_db_borrow_wait_seconds", null,
+            "Time spent waiting for a pooled database connection.");
+    private static final Counter BORROW_TIMEOUTS = MetricsRegistry.shared().counter("chat_db_borrow_timeouts_total",
+            "Borrows that found no database connection in time.");
+
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new ArrayList<>();
+    private final long borrowTimeoutMillis;
+
+    ConnectionPool(String url, int size, long borrowTimeoutMillis) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        try {
+            for (int i = 0; i < size; i++) {
+                PooledConnection connection = new PooledConnection(SQLService.openConnection(url));
+                all.add(connection);
+                idle.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PooledConnection connection = idle.poll();
+            if (connection == null) {
+                connection = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            BORROW_WAIT.recordSince(start);
+            if (connection == null) {
+                BORROW_TIMEOUTS.increment();
+                throw new SQLException("No database connection available within " + borrowTimeoutMillis + " ms");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (PooledConnection connection : all) {
+            connection.release();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    final class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void setAutoCommit(boolean autoCommit) throws SQLException {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        void commit() throws SQLException {
+            connection.commit();
+        }
+
+        void rollback() throws SQLException {
+            connection.rollback();
+        }
+
+        /**
+         * Hands the connection back to the pool.
+         */
+        @Override
+        public void close() {
+            idle.offer(this);
+        }
+
+        private void release() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package geekbrains.database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers recently verified logins so a wave of reconnects costs one users table lookup per user rather than
+ * one per connect. Only a salted hash of the password is kept, each entry expires after a fixed time, and an
+ * entry is dropped as soon as its nickname is renamed.
+ *
+ * @author Abubakar Musanipov
+ */
+public class CredentialCache {
+
+    private final SQLService sqlService;
+    private final long ttlMillis;
+    private final int capacity;
+    private final byte[] salt = new byte[16];
+    private final Map<String, Entry> verified = new ConcurrentHashMap<>();
+
+    public CredentialCache(SQLService sqlService, long ttlMillis, int capacity) {
+        this.sqlService = sqlService;
+        this.ttlMillis = ttlMillis;
+        this.capacity = capacity;
+        new SecureRandom().nextBytes(salt);
+    }
+
+    public boolean verify(String nickname, String password) throws SQLException {
+        long now = System.currentTimeMillis();
+        byte[] hash = hash(nickname, password);
+        Entry entry = verified.get(nickname);
+        if (entry != null && entry.expiresAt > now && MessageDigest.isEqual(entry.hash, hash)) {
+            return true;
+        }
+        if (sqlService.getNicknameByLoginAndPassword(nickname, password) == null) {
+            return false;
+        }
+        if (verified.size() >= capacity) {
+            evictExpired(now);
+        }
+        if (verified.size() < capacity) {
+            verified.put(nickname, new Entry(hash, now + ttlMillis));
+        }
+        return true;
+    }
+
+    public void invalidate(String nickname) {
+        verified.remove(nickname);
+    }
+
+    private void evictExpired(long now) {
+        for (Iterator<Entry> entries = verified.values().iterator(); entries.hasNext(); ) {
+            if (entries.next().expiresAt <= now) {
+                entries.remove();
+            }
+        }
+    }
+
+    private byte[] hash(String nickname, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update(nickname.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] hash;
+        private final long expiresAt;
+
+        Entry(byte[] hash, long expiresAt) {
+            this.hash = hash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
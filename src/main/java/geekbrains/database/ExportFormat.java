@@ -0,0 +1,168 @@
+package geekbrains.database;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * How {@link HistoryExporter} writes a message: one line per message in every format.
+ *
+ * @author Abubakar Musanipov
+ */
+public enum ExportFormat {
+
+    /**
+     * Readable lines: time, room, sender (and recipient of a private message) and the text.
+     */
+    TEXT("txt") {
+        @Override
+        void append(StringBuilder out, long id, long timestamp, String type, String sender, String recipient, String room, String text) {
+            TIME_FORMATTER.formatTo(Instant.ofEpochMilli(timestamp), out);
+            out.append(" [").append(room).append("] ").append(sender);
+            if (recipient != null) {
+                out.append(" -> ").append(recipient);
+            }
+            if (!"TEXT_MESSAGE".equals(type) && !"PRIVATE_TEXT_MESSAGE".equals(type)) {
+                out.append(" (").append(type).append(')');
+            }
+            out.append(": ");
+            appendText(out, text);
+            out.append('\n');
+        }
+    },
+
+    /**
+     * RFC 4180 comma separated values with a header row; the time is given both as epoch millis and ISO text.
+     */
+    CSV("csv") {
+        @Override
+        String header() {
+            return "id,timestamp,time,type,sender,recipient,room,text\r\n";
+        }
+
+        @Override
+        void append(StringBuilder out, long id, long timestamp, String type, String sender, String recipient, String room, String text) {
+            out.append(id).append(',').append(timestamp).append(',');
+            TIME_FORMATTER.formatTo(Instant.ofEpochMilli(timestamp), out);
+            out.append(',').append(type).append(',');
+            csv(out, sender);
+            out.append(',');
+            csv(out, recipient);
+            out.append(',');
+            csv(out, room);
+            out.append(',');
+            csv(out, text);
+            out.append("\r\n");
+        }
+    },
+
+    /**
+     * One JSON object per line, absent values as {@code null}.
+     */
+    NDJSON("ndjson") {
+        @Override
+        void append(StringBuilder out, long id, long timestamp, String type, String sender, String recipient, String room, String text) {
+            out.append("{\"id\":").append(id).append(",\"timestamp\":").append(timestamp).append(",\"type\":");
+            json(out, type);
+            out.append(",\"sender\":");
+            json(out, sender);
+            out.append(",\"recipient\":");
+            json(out, recipient);
+            out.append(",\"room\":");
+            json(out, room);
+            out.append(",\"text\":");
+            json(out, text);
+            out.append("}\n");
+        }
+    };
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    String header() {
+        return "";
+    }
+
+    abstract void append(StringBuilder out, long id, long timestamp, String type, String sender, String recipient, String room, String text);
+
+    /**
+     * The text on one line: line breaks inside a message become spaces.
+     */
+    private static void appendText(StringBuilder out, String text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            out.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    private static void csv(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static void json(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,204 @@
+package geekbrains.database;
+
+import geekbrains.settings.Settings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes chat history to a file straight from {@code chat_history}. Rows are read forward by id in chunks of
+ * {@link Settings#EXPORT_CHUNK_ROWS}, each chunk a short read of its own, and encoded into one reusable buffer
+ * that is written to the file channel whenever it fills; memory use is the same for a thousand rows or a
+ * hundred million. The export uses a database connection of its own, so it neither waits for nor holds up the
+ * chat, and works whether the server is running or not.
+ *
+ * @author Abubakar Musanipov
+ */
+public class HistoryExporter {
+
+    private static final String FIRST_ID_AFTER = "SELECT MIN(id) FROM chat_history WHERE timestamp >= ?;";
+    private static final String LAST_ID_BEFORE = "SELECT MAX(id) FROM chat_history WHERE timestamp < ?;";
+    private static final String EXPORT_CHUNK = "SELECT id, timestamp, type, sender, recipient, room, text FROM chat_history "
+            + "WHERE id > ? AND id <= ? AND timestamp >= ? AND timestamp < ? "
+            + "AND (? IS NULL OR room = ?) AND (? IS NULL OR sender = ? OR recipient = ?) ORDER BY id LIMIT ?;";
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    /**
+     * Told how far the export is, after every chunk.
+     */
+    @FunctionalInterface
+    public interface Progress {
+
+        /**
+         * @param fraction how much of the matching id range is done, from 0 to 1
+         */
+        void update(long rows, double fraction);
+    }
+
+    private final String url;
+    private volatile boolean cancelled;
+
+    public HistoryExporter() {
+        this(Settings.DATABASE_URL);
+    }
+
+    public HistoryExporter(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Exports the messages matching the filter and returns how many were written. The filter takes the
+     * {@code from:}, {@code after:} and {@code before:} of a search, where {@code from:} matches the sender or
+     * the recipient; a null room means every room. A failed or cancelled export deletes the file.
+     */
+    public long export(Path file, ExportFormat format, boolean gzip, String room, SearchQuery filter, Progress progress)
+            throws IOException, SQLException {
+        if (filter.hasTerms()) {
+            throw new IllegalArgumentException("An export is filtered by from:, after: and before: only");
+        }
+        cancelled = false;
+        boolean done = false;
+        try (Connection connection = SQLService.openConnection(url);
+             FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             WritableByteChannel channel = gzip
+                     ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_BYTES))
+                     : fileChannel) {
+            long firstId = queryId(connection, FIRST_ID_AFTER, filter.getAfter());
+            long lastId = queryId(connection, LAST_ID_BEFORE, filter.getBefore());
+            Output output = new Output(channel);
+            output.write(format.header());
+            long rows = 0;
+            if (firstId > 0 && lastId >= firstId) {
+                rows = exportRange(connection, output, format, room, filter, firstId - 1, lastId, progress);
+            }
+            output.flush();
+            done = true;
+            progress.update(rows, 1);
+            return rows;
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private long exportRange(Connection connection, Output output, ExportFormat format, String room, SearchQuery filter,
+                             long afterId, long lastId, Progress progress) throws IOException, SQLException {
+        long span = lastId - afterId;
+        long position = afterId;
+        long rows = 0;
+        StringBuilder text = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement(EXPORT_CHUNK)) {
+            statement.setLong(2, lastId);
+            statement.setLong(3, filter.getAfter());
+            statement.setLong(4, filter.getBefore());
+            statement.setString(5, room);
+            statement.setString(6, room);
+            statement.setString(7, filter.getSender());
+            statement.setString(8, filter.getSender());
+            statement.setString(9, filter.getSender());
+            statement.setInt(10, Settings.EXPORT_CHUNK_ROWS);
+            while (true) {
+                if (cancelled) {
+                    throw new CancellationException("Export cancelled");
+                }
+                statement.setLong(1, position);
+                int chunk = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        position = resultSet.getLong(1);
+                        format.append(text, position, resultSet.getLong(2), resultSet.getString(3), resultSet.getString(4),
+                                resultSet.getString(5), resultSet.getString(6), resultSet.getString(7));
+                        chunk++;
+                        if (text.length() >= BUFFER_BYTES / 4) {
+                            output.write(text);
+                            text.setLength(0);
+                        }
+                    }
+                }
+                output.write(text);
+                text.setLength(0);
+                rows += chunk;
+                if (chunk < Settings.EXPORT_CHUNK_ROWS) {
+                    return rows;
+                }
+                progress.update(rows, (double) (position - afterId) / span);
+            }
+        }
+    }
+
+    private static long queryId(Connection connection, String sql, long timestamp) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, timestamp);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Stops a running export after its current chunk.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * UTF-8 encodes into a fixed direct buffer and writes it to the channel each time it is full.
+     */
+    private static final class Output {
+
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (!result.isOverflow()) {
+                    return;
+                }
+                drain();
+            }
+        }
+
+        void flush() throws IOException {
+            encoder.encode(CharBuffer.allocate(0), buffer, true);
+            encoder.flush(buffer);
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package geekbrains.database;
+
+import geekbrains.connection.Message;
+import geekbrains.metrics.Histogram;
+import geekbrains.metrics.MetricsRegistry;
+import geekbrains.settings.Settings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves chat messages off the delivery path. Callers only enqueue; a single writer thread groups whatever has
+ * queued up into one transaction, closing a batch when it holds {@link Settings#PERSISTENCE_BATCH_SIZE}
+ * messages or {@link Settings#PERSISTENCE_BATCH_MILLIS} have passed since its first message. A full queue
+ * drops the message rather than slowing the chat down. A batch whose transaction fails is saved again one
+ * message at a time, so a message the database refuses costs only itself.
+ *
+ * @author Abubakar Musanipov
+ */
+public class MessageWriter implements AutoCloseable {
+
+    private static final Message CLOSE = new Message(null);
+    private static final Histogram FLUSH_TIME = MetricsRegistry.shared().histogram("chat_persistence_flush_seconds", null,
+            "Time to save one batch of messages in a transaction.");
+
+    private final BlockingQueue<Message> queue = new ArrayBlockingQueue<>(Settings.PERSISTENCE_QUEUE_CAPACITY);
+    private final Connection connection;
+    private final PreparedStatement insertMessage;
+    private final Thread writer;
+
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong queuedMessages = new AtomicLong();
+    private long handledMessages;
+    private volatile long savedMessages;
+    private volatile long transactions;
+    private volatile long failedTransactions;
+    private volatile long failedMessages;
+    private volatile long lastFlushMicros;
+    private volatile long maxFlushMicros;
+
+    public MessageWriter(SQLService sqlService) throws SQLException {
+        this.connection = sqlService.openConnection();
+        this.insertMessage = connection.prepareStatement(SQLService.INSERT_HISTORY);
+        this.writer = new Thread(this::writeLoop, "chat-message-writer");
+        this.writer.start();
+    }
+
+    /**
+     * Queues a server-stamped message for {@code chat_history}. Returns false if the backlog is full and the
+     * message was dropped.
+     */
+    public boolean save(Message message) {
+        if (queue.offer(message)) {
+            queuedMessages.incrementAndGet();
+            return true;
+        }
+        droppedMessages.incrementAndGet();
+        return false;
+    }
+
+    private void writeLoop() {
+        List<Message> batch = new ArrayList<>(Settings.PERSISTENCE_BATCH_SIZE);
+        boolean closing = false;
+        while (!closing) {
+            try {
+                Message first = queue.take();
+                if (first == CLOSE) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Settings.PERSISTENCE_BATCH_MILLIS);
+                while (batch.size() < Settings.PERSISTENCE_BATCH_SIZE) {
+                    Message next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            flush(batch);
+        }
+        List<Message> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.remove(CLOSE);
+        flush(rest);
+    }
+
+    /**
+     * Waits until every message queued before this call has been written or has failed. Returns false if that
+     * took longer than the timeout.
+     */
+    public boolean awaitWritten(long timeoutMillis) throws InterruptedException {
+        long target = queuedMessages.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (handledMessages < target) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0 || !writer.isAlive()) {
+                    return false;
+                }
+                wait(wait);
+            }
+        }
+        return true;
+    }
+
+    private void flush(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int size = batch.size();
+        long start = System.nanoTime();
+        try {
+            connection.setAutoCommit(false);
+            for (Message message : batch) {
+                bind(message);
+                insertMessage.addBatch();
+            }
+            insertMessage.executeBatch();
+            connection.commit();
+            savedMessages += batch.size();
+            transactions++;
+        } catch (SQLException e) {
+            failedTransactions++;
+            try {
+                insertMessage.clearBatch();
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            saveOneByOne(batch);
+        } finally {
+            batch.clear();
+            synchronized (this) {
+                handledMessages += size;
+                notifyAll();
+            }
+        }
+        FLUSH_TIME.recordSince(start);
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        lastFlushMicros = micros;
+        if (micros > maxFlushMicros) {
+            maxFlushMicros = micros;
+        }
+    }
+
+    /**
+     * Saves a batch whose transaction failed one message at a time, so only the messages the database refuses
+     * are lost.
+     */
+    private void saveOneByOne(List<Message> batch) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            failedMessages += batch.size();
+            return;
+        }
+        for (Message message : batch) {
+            try {
+                bind(message);
+                insertMessage.executeUpdate();
+                savedMessages++;
+            } catch (SQLException e) {
+                failedMessages++;
+            }
+        }
+    }
+
+    private void bind(Message message) throws SQLException {
+        insertMessage.setLong(1, message.getId());
+        insertMessage.setLong(2, message.getTimestamp());
+        insertMessage.setString(3, message.getTypeMessage().name());
+        setNullableString(4, message.getSender());
+        setNullableString(5, message.getRecipient());
+        setNullableString(6, message.getRoom());
+        setNullableString(7, message.getTextMessage());
+    }
+
+    private void setNullableString(int index, String value) throws SQLException {
+        if (value == null) {
+            insertMessage.setNull(index, Types.VARCHAR);
+        } else {
+            insertMessage.setString(index, value);
+        }
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getSavedMessages() {
+        return savedMessages;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public long getFailedTransactions() {
+        return failedTransactions;
+    }
+
+    /**
+     * Messages the database refused even when saved on their own.
+     */
+    public long getFailedMessages() {
+        return failedMessages;
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getLastFlushMicros() {
+        return lastFlushMicros;
+    }
+
+    public long getMaxFlushMicros() {
+        return maxFlushMicros;
+    }
+
+    /**
+     * Writes out everything already queued, then releases the database connection.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            insertMessage.close();
+            connection.close();
+        }
+    }
+}
@@ -1,118 +1,317 @@
 package geekbrains.database;
 
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageType;
+import geekbrains.metrics.Counter;
+import geekbrains.metrics.Histogram;
+import geekbrains.metrics.MetricsRegistry;
+import geekbrains.settings.Settings;
+
 import java.sql.*;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
+ * Access to the users database. Every call borrows a pooled connection for its duration, so logins,
+ * registrations and nickname changes from different threads run side by side; chat history has a writer
+ * connection of its own.
+ * <p>
+ * Chat history lives in {@code chat_history}, keyed by the server-assigned message id. Pages are read backwards
+ * by id ("everything before id X"), so each page is an index range scan no matter how deep the client scrolls.
+ * Message text is also indexed in the FTS5 table {@code chat_history_fts} for ranked word search.
+ *
  * @author Abubakar Musanipov
  */
-public class SQLService {
+public class SQLService implements AutoCloseable {
 
-    private static final String URL_CONNECTION_DATABASE = "jdbc:sqlite:src/main/java/ru/geekbrains/database/usersDatabase.db";
     private static final String DRIVER = "org.sqlite.JDBC";
-    private static SQLService instance;
-    private static Connection connection;
 
-    private static PreparedStatement preparedStatementGetNicknameByLoginAndPassword;
-    private static PreparedStatement preparedStatementGetNickname;
-    private static PreparedStatement preparedStatementRegistration;
-    private static PreparedStatement preparedStatementChangeNick;
-    private static PreparedStatement preparedStatementSaveInformation;
+    private static final String GET_NICKNAME_BY_LOGIN_AND_PASSWORD = "SELECT Nickname FROM users WHERE Nickname = ? AND Password = ?;";
+    private static final String GET_NICKNAME = "SELECT Nickname FROM users WHERE Nickname = ?";
+    private static final String REGISTRATION = "INSERT INTO users (Nickname, Password) VALUES (?, ?);";
+    private static final String CHANGE_NICK = "UPDATE users SET Nickname = ? WHERE Nickname = ?;";
+    private static final String MOVE_SENT_HISTORY = "UPDATE chat_history SET sender = ? WHERE sender = ? AND id <= ?;";
+    private static final String MOVE_RECEIVED_HISTORY = "UPDATE chat_history SET recipient = ? WHERE recipient = ? AND id <= ?;";
+
+    private static final String[] HISTORY_SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS chat_history (id INTEGER PRIMARY KEY, timestamp INTEGER NOT NULL, "
+                    + "type TEXT NOT NULL, sender TEXT, recipient TEXT, room TEXT, text TEXT);",
+            "CREATE INDEX IF NOT EXISTS chat_history_room ON chat_history (room, id) WHERE recipient IS NULL;",
+            "CREATE INDEX IF NOT EXISTS chat_history_recipient ON chat_history (recipient, id) WHERE recipient IS NOT NULL;",
+            "CREATE INDEX IF NOT EXISTS chat_history_sender ON chat_history (sender, id);",
+            "CREATE INDEX IF NOT EXISTS chat_history_timestamp ON chat_history (timestamp);",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS chat_history_fts USING fts5(text, content='chat_history', "
+                    + "content_rowid='id', tokenize='unicode61 remove_diacritics 2');",
+            "CREATE TRIGGER IF NOT EXISTS chat_history_fts_insert AFTER INSERT ON chat_history BEGIN "
+                    + "INSERT INTO chat_history_fts (rowid, text) VALUES (new.id, new.text); END;",
+            "CREATE TRIGGER IF NOT EXISTS chat_history_fts_delete AFTER DELETE ON chat_history BEGIN "
+                    + "INSERT INTO chat_history_fts (chat_history_fts, rowid, text) VALUES ('delete', old.id, old.text); END;"
+    };
+    private static final String HAS_SEARCH_INDEX = "SELECT 1 FROM sqlite_master WHERE name = 'chat_history_fts';";
+    private static final String REBUILD_SEARCH_INDEX = "INSERT INTO chat_history_fts (chat_history_fts) VALUES ('rebuild');";
+    private static final String GET_LAST_MESSAGE_ID = "SELECT MAX(id) FROM chat_history;";
+    private static final String LOAD_HISTORY = "SELECT id, timestamp, type, sender, recipient, room, text FROM chat_history "
+            + "WHERE room = ? AND recipient IS NULL AND id < ? ORDER BY id DESC LIMIT ?;";
+    private static final String SEARCH_HISTORY = "SELECT h.id, h.timestamp, h.type, h.sender, h.recipient, h.room, h.text "
+            + "FROM chat_history_fts JOIN chat_history h ON h.id = chat_history_fts.rowid "
+            + "WHERE chat_history_fts MATCH ? AND h.type IN ('TEXT_MESSAGE', 'PRIVATE_TEXT_MESSAGE') "
+            + "AND ((h.recipient IS NULL AND h.room = ?) OR h.recipient = ? OR (h.sender = ? AND h.recipient IS NOT NULL)) "
+            + "AND (? IS NULL OR h.sender = ?) AND h.timestamp >= ? AND h.timestamp < ? "
+            + "ORDER BY chat_history_fts.rank, h.id DESC LIMIT ? OFFSET ?;";
+    static final String INSERT_HISTORY = "INSERT INTO chat_history (id, timestamp, type, sender, recipient, room, text) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+    private static final Histogram GET_NICKNAME_TIME = queryTime("get_nickname");
+    private static final Histogram SIGN_IN_TIME = queryTime("sign_in");
+    private static final Histogram REGISTRATION_TIME = queryTime("register");
+    private static final Histogram CHANGE_NICK_TIME = queryTime("rename");
+    private static final Histogram LOAD_HISTORY_TIME = queryTime("load_history");
+    private static final Histogram SEARCH_TIME = queryTime("search");
+    private static final Counter ERRORS = MetricsRegistry.shared().counter("chat_db_errors_total", "Database calls that failed.");
+
+    private final String url;
+    private final ConnectionPool pool;
 
-    private static boolean isConnected = false;
+    public SQLService() throws SQLException {
+        this(Settings.DATABASE_URL, Settings.DATABASE_POOL_SIZE);
+    }
 
-    private SQLService() {
+    public SQLService(String url, int poolSize) throws SQLException {
+        this.url = url;
         try {
-            loadConnection();
-            loadDriver();
-            prepareAllStatements();
-        } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
-            System.exit(0);
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not found", e);
         }
+        this.pool = new ConnectionPool(url, poolSize, Settings.DATABASE_BORROW_TIMEOUT_MILLIS);
     }
 
-    public static boolean isConnected() {
-        return isConnected;
+    /**
+     * Opens a connection of its own to the chat database, in WAL mode so readers never wait for the writer.
+     */
+    public Connection openConnection() throws SQLException {
+        return openConnection(url);
     }
 
-    public static SQLService getInstance() {
-        if (instance == null) {
-            synchronized (SQLService.class) {
-                if (instance == null) {
-                    instance = new SQLService();
-                    isConnected = true;
-                }
+    private static Histogram queryTime(String operation) {
+        return MetricsRegistry.shared().histogram("chat_db_query_seconds", "operation=\"" + operation + "\"",
+                "Time of a database call, waiting for a pooled connection included.");
+    }
+
+    static Connection openConnection(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL;");
+            statement.execute("PRAGMA synchronous=NORMAL;");
+            statement.execute("PRAGMA busy_timeout=5000;");
+        }
+        return connection;
+    }
+
+    public String getNickname(String nickname) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepare(GET_NICKNAME);
+            statement.setString(1, nickname);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            GET_NICKNAME_TIME.recordSince(start);
+        }
+    }
+
+    public String getNicknameByLoginAndPassword(String login, String password) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepare(GET_NICKNAME_BY_LOGIN_AND_PASSWORD);
+            statement.setString(1, login);
+            statement.setString(2, password);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
             }
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            SIGN_IN_TIME.recordSince(start);
+        }
+    }
+
+    public boolean registration(String nickname, String password) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepare(REGISTRATION);
+            statement.setString(1, nickname);
+            statement.setString(2, password);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            REGISTRATION_TIME.recordSince(start);
         }
-        return instance;
     }
 
-    private static void loadConnection() throws SQLException {
-        connection = DriverManager.getConnection(URL_CONNECTION_DATABASE);
+    /**
+     * Renames the account and, in the same transaction, every history row it sent or received, so private
+     * messages stay with the account rather than with a nickname someone else may register later.
+     */
+    public boolean changeNick(String oldNickname, String newNickname) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement statement = connection.prepare(CHANGE_NICK);
+                statement.setString(1, newNickname);
+                statement.setString(2, oldNickname);
+                boolean renamed = statement.executeUpdate() == 1;
+                if (renamed) {
+                    moveHistory(connection, oldNickname, newNickname, Long.MAX_VALUE);
+                }
+                connection.commit();
+                return renamed;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            CHANGE_NICK_TIME.recordSince(start);
+        }
     }
 
-    private static void loadDriver() throws ClassNotFoundException {
-        Class.forName(DRIVER);
+    /**
+     * Moves history rows up to {@code lastId} from the old nickname to the new one: messages that were still on
+     * their way to the database while the account was renamed.
+     */
+    public void moveHistory(String oldNickname, String newNickname, long lastId) throws SQLException {
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            moveHistory(connection, oldNickname, newNickname, lastId);
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        }
     }
 
-    private static void prepareAllStatements() throws SQLException {
-        preparedStatementGetNicknameByLoginAndPassword = connection.prepareStatement("SELECT Nickname FROM users WHERE Nickname = ? AND Password = ?;");
-        preparedStatementGetNickname = connection.prepareStatement("SELECT Nickname FROM users WHERE Nickname = ?");
-        preparedStatementRegistration = connection.prepareStatement("INSERT INTO users (Nickname, Password) VALUES (?, ?);");
-        preparedStatementChangeNick = connection.prepareStatement("UPDATE users SET Nickname = ? WHERE Nickname = ?;");
-        preparedStatementSaveInformation = connection.prepareStatement("INSERT INTO users_messages (Messages, time) VALUES (?, ?);");
+    private static void moveHistory(ConnectionPool.PooledConnection connection, String oldNickname, String newNickname,
+                                    long lastId) throws SQLException {
+        for (String sql : new String[]{MOVE_SENT_HISTORY, MOVE_RECEIVED_HISTORY}) {
+            PreparedStatement statement = connection.prepare(sql);
+            statement.setString(1, newNickname);
+            statement.setString(2, oldNickname);
+            statement.setLong(3, lastId);
+            statement.executeUpdate();
+        }
     }
 
-    public static String getNickname(String nickname) throws SQLException {
-        String nick = null;
-        preparedStatementGetNickname.setString(1, nickname);
-        ResultSet resultSet = preparedStatementGetNickname.executeQuery();
-        if (resultSet.next()) {
-            nick = resultSet.getString(1);
+    /**
+     * Creates the history table, its indexes and its full-text index if this database does not have them yet.
+     * Triggers keep the full-text index in step with every row the message writer inserts; a database that had
+     * history before the index existed gets it indexed once, here.
+     */
+    public void createHistorySchema() throws SQLException {
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            boolean indexed;
+            try (ResultSet resultSet = connection.prepare(HAS_SEARCH_INDEX).executeQuery()) {
+                indexed = resultSet.next();
+            }
+            for (String sql : HISTORY_SCHEMA) {
+                connection.prepare(sql).execute();
+            }
+            if (!indexed) {
+                connection.prepare(REBUILD_SEARCH_INDEX).execute();
+            }
         }
-        resultSet.close();
-        return nick;
     }
 
-    public static String getNicknameByLoginAndPassword(String login, String password) throws SQLException {
-        String nick = null;
-        preparedStatementGetNicknameByLoginAndPassword.setString(1, login);
-        preparedStatementGetNicknameByLoginAndPassword.setString(2, password);
-        ResultSet rs = preparedStatementGetNicknameByLoginAndPassword.executeQuery();
-        if (rs.next()) {
-            nick = rs.getString(1);
+    /**
+     * Returns the highest stored message id, or 0 for an empty history.
+     */
+    public long getLastMessageId() throws SQLException {
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            try (ResultSet resultSet = connection.prepare(GET_LAST_MESSAGE_ID).executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
         }
-        rs.close();
-        return nick;
     }
 
-    public static boolean registration(String nickname, String password) throws SQLException {
-        preparedStatementRegistration.setString(1, nickname);
-        preparedStatementRegistration.setString(2, password);
-        preparedStatementRegistration.executeUpdate();
-        return true;
+    /**
+     * Returns up to {@code limit} public messages of a room older than {@code beforeId}, oldest first.
+     * A {@code beforeId} of 0 starts from the newest message.
+     */
+    public List<Message> loadHistory(String room, long beforeId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepare(LOAD_HISTORY);
+            statement.setString(1, room);
+            statement.setLong(2, beforeId > 0 ? beforeId : Long.MAX_VALUE);
+            statement.setInt(3, limit);
+            List<Message> page = readMessages(statement, limit);
+            Collections.reverse(page);
+            return page;
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            LOAD_HISTORY_TIME.recordSince(start);
+        }
     }
 
-    public static boolean changeNick(String oldNickname, String newNickname) throws SQLException {
-        preparedStatementChangeNick.setString(1, newNickname);
-        preparedStatementChangeNick.setString(2, oldNickname);
-        preparedStatementChangeNick.executeUpdate();
-        return true;
+    /**
+     * Returns up to {@code limit} messages matching the query, best match first and newer first among equals.
+     * Only the room's public messages and the viewer's own private conversations are searched. The offset is
+     * the client's, so it is taken as given: past the last hit, however large, or negative, it finds nothing.
+     */
+    public List<Message> search(SearchQuery query, String room, String viewer, long offset, int limit) throws SQLException {
+        if (!query.hasTerms() || offset < 0) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepare(SEARCH_HISTORY);
+            statement.setString(1, query.toMatchExpression());
+            statement.setString(2, room);
+            statement.setString(3, viewer);
+            statement.setString(4, viewer);
+            statement.setString(5, query.getSender());
+            statement.setString(6, query.getSender());
+            statement.setLong(7, query.getAfter());
+            statement.setLong(8, query.getBefore());
+            statement.setInt(9, limit);
+            statement.setLong(10, offset);
+            return readMessages(statement, limit);
+        } catch (SQLException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            SEARCH_TIME.recordSince(start);
+        }
     }
 
-    public static void savingUserMessages(String message) throws SQLException {
-        preparedStatementSaveInformation.setString(1, message);
-        preparedStatementSaveInformation.setString(2, LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-        preparedStatementSaveInformation.executeUpdate();
+    private static List<Message> readMessages(PreparedStatement statement, int limit) throws SQLException {
+        List<Message> messages = new ArrayList<>(limit);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                messages.add(new Message(MessageType.valueOf(resultSet.getString(3)), resultSet.getString(4),
+                        resultSet.getString(5), resultSet.getString(6), resultSet.getString(7), null,
+                        resultSet.getLong(1), resultSet.getLong(2)));
+            }
+        }
+        return messages;
     }
 
-    public static void closeConnection() throws SQLException {
-        preparedStatementRegistration.close();
-        preparedStatementGetNicknameByLoginAndPassword.close();
-        preparedStatementChangeNick.close();
-        connection.close();
-        connection = null;
+    @Override
+    public void close() {
+        pool.close();
     }
 }
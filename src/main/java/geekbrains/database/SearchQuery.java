@@ -0,0 +1,87 @@
+package geekbrains.database;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A search as typed by a user: words to look for plus optional {@code from:<nickname>},
+ * {@code after:<yyyy-MM-dd>} and {@code before:<yyyy-MM-dd>} filters. Dates are days in the server's time
+ * zone, {@code after} including the day and {@code before} excluding it.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class SearchQuery {
+
+    private final List<String> terms;
+    private final String sender;
+    private final long after;
+    private final long before;
+
+    private SearchQuery(List<String> terms, String sender, long after, long before) {
+        this.terms = terms;
+        this.sender = sender;
+        this.after = after;
+        this.before = before;
+    }
+
+    public static SearchQuery parse(String query) {
+        List<String> terms = new ArrayList<>();
+        String sender = null;
+        long after = 0;
+        long before = Long.MAX_VALUE;
+        for (String token : query.trim().split("\\s+")) {
+            if (token.startsWith("from:") && token.length() > 5) {
+                sender = token.substring(5);
+            } else if (token.startsWith("after:") && parseDay(token.substring(6)) >= 0) {
+                after = parseDay(token.substring(6));
+            } else if (token.startsWith("before:") && parseDay(token.substring(7)) >= 0) {
+                before = parseDay(token.substring(7));
+            } else if (!token.isEmpty()) {
+                terms.add(token);
+            }
+        }
+        return new SearchQuery(terms, sender, after, before);
+    }
+
+    private static long parseDay(String day) {
+        try {
+            return LocalDate.parse(day).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public boolean hasTerms() {
+        return !terms.isEmpty();
+    }
+
+    /**
+     * The words as an FTS5 expression: each one a quoted prefix phrase, so punctuation in what the user typed
+     * is never read as query syntax and "link" also finds "links".
+     */
+    String toMatchExpression() {
+        StringBuilder expression = new StringBuilder();
+        for (String term : terms) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append('"').append(term.replace("\"", "\"\"")).append("\"*");
+        }
+        return expression.toString();
+    }
+
+    String getSender() {
+        return sender;
+    }
+
+    long getAfter() {
+        return after;
+    }
+
+    long getBefore() {
+        return before;
+    }
+}
@@ -0,0 +1,143 @@
+package geekbrains.loadtest;
+
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageCodec;
+import geekbrains.connection.MessageType;
+import geekbrains.connection.Network;
+import geekbrains.settings.Settings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * One simulated user: signs in the way the window client does, then reads on a thread of its own and hands
+ * every load message it receives to the generator.
+ *
+ * @author Abubakar Musanipov
+ */
+class Bot {
+
+    private static final long READER_STACK_BYTES = 256 * 1024;
+
+    private final LoadGenerator generator;
+    private final LoadProfile profile;
+    private final String nickname;
+    private volatile Network network;
+    private volatile boolean online;
+
+    Bot(LoadGenerator generator, LoadProfile profile, String nickname) {
+        this.generator = generator;
+        this.profile = profile;
+        this.nickname = nickname;
+    }
+
+    String getNickname() {
+        return nickname;
+    }
+
+    boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Signs in, registering the account if the server does not know it. Returns null once the user is in the
+     * chat, otherwise the server's reason.
+     */
+    String signIn() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(profile.host, profile.port), (int) profile.connectTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) profile.connectTimeoutMillis);
+            Network network = new Network(socket);
+            MessageType attempt = MessageType.NICKNAME;
+            while (true) {
+                Message message = network.receive();
+                switch (message.getTypeMessage()) {
+                    case REQUEST_NICKNAME:
+                        if (MessageCodec.BINARY.getName().equals(message.getTextMessage())) {
+                            network.setCodec(MessageCodec.BINARY);
+                        }
+                        network.send(Message.credentials(attempt, nickname, profile.password));
+                        break;
+                    case AUTHENTICATION_FAILED:
+                        if (attempt == MessageType.REGISTRATION) {
+                            network.close();
+                            return message.getTextMessage();
+                        }
+                        attempt = MessageType.REGISTRATION;
+                        break;
+                    case NICKNAME_USED:
+                        network.close();
+                        return "The user is already in the chat";
+                    case NICKNAME_ACCEPTED:
+                        socket.setSoTimeout(0);
+                        this.network = network;
+                        online = true;
+                        Thread reader = new Thread(null, () -> read(network), "chat-load-" + nickname, READER_STACK_BYTES);
+                        reader.setDaemon(true);
+                        reader.start();
+                        return null;
+                    default:
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            socket.close();
+            throw new IOException(e);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void read(Network network) {
+        try {
+            while (true) {
+                Message message = network.receive();
+                MessageType type = message.getTypeMessage();
+                if (type == MessageType.TEXT_MESSAGE || type == MessageType.PRIVATE_TEXT_MESSAGE) {
+                    generator.received(message);
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            if (online && this.network == network) {
+                online = false;
+                generator.lost(this);
+            }
+        }
+    }
+
+    boolean send(String recipient, String text) {
+        Network network = this.network;
+        if (!online || network == null) {
+            return false;
+        }
+        try {
+            network.send(new Message(recipient == null ? MessageType.TEXT_MESSAGE : MessageType.PRIVATE_TEXT_MESSAGE,
+                    nickname, recipient, Settings.DEFAULT_ROOM, text));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Signs out the way the window client does and closes the connection.
+     */
+    void leave() {
+        Network network = this.network;
+        online = false;
+        if (network == null) {
+            return;
+        }
+        try {
+            network.send(new Message(MessageType.DISABLE_USER));
+        } catch (IOException ignored) {
+        }
+        try {
+            network.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package geekbrains.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency distribution in microseconds, precise to about three percent from one microsecond to hours. Values
+ * below 32 each have a bucket; above that every doubling is split into 32 buckets, so a tail percentile is
+ * read as accurately as the median. Recording is one atomic increment.
+ *
+ * @author Abubakar Musanipov
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 37;
+    private static final long MAX_MICROS = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.min(Math.max(0, nanos / 1000), MAX_MICROS)));
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * The latency in microseconds that the given share of the recorded values do not exceed, 0 if none were
+     * recorded.
+     */
+    public long getQuantileMicros(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return MAX_MICROS;
+    }
+
+    public long getMaxMicros() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Starts over; values recorded while it runs may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+}
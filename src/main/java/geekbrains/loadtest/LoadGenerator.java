@@ -0,0 +1,315 @@
+package geekbrains.loadtest;
+
+import geekbrains.connection.Message;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates a busy chat room against a running server. All users sign in first; then messages go out at a fixed
+ * overall rate from randomly chosen online users, some of them privately, while users leave and sign in again
+ * at the churn rate. Throughput and latency are reported every interval and once more at the end.
+ * <p>
+ * Each message carries the time it was due to be sent, and its latency is taken when a user receives it, for
+ * every user that does. Because the due time is used rather than the time the send happened, a server that
+ * holds up the senders shows up in the latency instead of quietly lowering the rate.
+ *
+ * @author Abubakar Musanipov
+ */
+public class LoadGenerator {
+
+    private static final long DRAIN_MILLIS = 2000;
+
+    private final LoadProfile profile;
+    private final PrintStream out;
+    private final Bot[] bots;
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final LatencyRecorder intervalLatency = new LatencyRecorder();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder lostConnections = new LongAdder();
+    private final LongAdder signInFailures = new LongAdder();
+    private volatile String lastSignInFailure;
+    private volatile boolean running;
+
+    private ExecutorService connector;
+
+    public LoadGenerator(LoadProfile profile, PrintStream out) {
+        if (profile.users < 1 || profile.users > 99999) {
+            throw new IllegalArgumentException("The number of users must be from 1 to 99999");
+        }
+        if (profile.messagesPerUserPerSecond <= 0 || profile.privateShare < 0 || profile.privateShare > 1 || profile.churnPerSecond < 0) {
+            throw new IllegalArgumentException("The rate must be positive, the private share from 0 to 1 and churn not negative");
+        }
+        this.profile = profile;
+        this.out = out;
+        this.bots = new Bot[profile.users];
+        for (int i = 0; i < bots.length; i++) {
+            bots[i] = new Bot(this, profile, String.format("%s%05d", profile.nicknamePrefix, i));
+        }
+    }
+
+    /**
+     * Runs the whole test and prints the summary. Returns false if not every user could sign in.
+     */
+    public boolean run() throws InterruptedException {
+        connector = Executors.newFixedThreadPool(profile.connectThreads, daemon("chat-load-connect"));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("chat-load-timer"));
+        try {
+            if (!signInAll()) {
+                return false;
+            }
+            running = true;
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(profile.durationSeconds);
+            List<Thread> senders = new ArrayList<>();
+            for (int i = 0; i < profile.senderThreads; i++) {
+                int first = i;
+                Thread sender = new Thread(() -> sendLoop(first, start, end), "chat-load-sender-" + i);
+                sender.setDaemon(true);
+                sender.start();
+                senders.add(sender);
+            }
+            if (profile.churnPerSecond > 0) {
+                long period = (long) (TimeUnit.SECONDS.toNanos(1) / profile.churnPerSecond);
+                timer.scheduleAtFixedRate(this::churn, period, period, TimeUnit.NANOSECONDS);
+            }
+            long[] last = {0, 0};
+            timer.scheduleAtFixedRate(() -> report(start, last), profile.reportIntervalSeconds, profile.reportIntervalSeconds, TimeUnit.SECONDS);
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            long sending = System.nanoTime() - start;
+            timer.shutdownNow();
+            running = false;
+            drain();
+            summarize(sending, System.nanoTime() - start);
+            return true;
+        } finally {
+            running = false;
+            timer.shutdownNow();
+            connector.shutdownNow();
+            for (Bot bot : bots) {
+                bot.leave();
+            }
+        }
+    }
+
+    private boolean signInAll() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (Bot bot : bots) {
+            tasks.add(() -> signIn(bot));
+        }
+        int signedIn = 0;
+        for (Future<Boolean> result : connector.invokeAll(tasks)) {
+            if (result.isDone() && !result.isCancelled() && getQuietly(result)) {
+                signedIn++;
+            }
+        }
+        out.printf("%,d of %,d users signed in in %,d ms%n", signedIn, bots.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (signedIn < bots.length) {
+            out.printf("Sign-in failed: %s%n", lastSignInFailure);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean getQuietly(Future<Boolean> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean signIn(Bot bot) {
+        try {
+            String failure = bot.signIn();
+            if (failure == null) {
+                return true;
+            }
+            lastSignInFailure = bot.getNickname() + ": " + failure;
+        } catch (IOException e) {
+            lastSignInFailure = bot.getNickname() + ": " + e;
+        }
+        signInFailures.increment();
+        return false;
+    }
+
+    /**
+     * Sends every message whose number is {@code first} more than a multiple of the sender count, each at its
+     * due time or straight away if that has passed.
+     */
+    private void sendLoop(int first, long start, long end) {
+        double nanosPerMessage = TimeUnit.SECONDS.toNanos(1) / (profile.users * profile.messagesPerUserPerSecond);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder text = new StringBuilder(profile.textLength + 20);
+        for (long number = first; ; number += profile.senderThreads) {
+            long due = start + (long) (number * nanosPerMessage);
+            if (due >= end) {
+                return;
+            }
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            Bot sender = randomOnline(random);
+            Bot recipient = sender != null && random.nextDouble() < profile.privateShare ? randomOnline(random) : null;
+            if (sender != null && sender.send(recipient != null ? recipient.getNickname() : null, text(text, due))) {
+                sent.increment();
+            } else {
+                sendFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * The due time first, then filler up to the text length.
+     */
+    private String text(StringBuilder text, long due) {
+        text.setLength(0);
+        text.append(due).append(' ');
+        while (text.length() < profile.textLength) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    private Bot randomOnline(ThreadLocalRandom random) {
+        for (int attempt = 0; attempt < 16; attempt++) {
+            Bot bot = bots[random.nextInt(bots.length)];
+            if (bot.isOnline()) {
+                return bot;
+            }
+        }
+        return null;
+    }
+
+    private void churn() {
+        Bot bot = randomOnline(ThreadLocalRandom.current());
+        if (bot == null) {
+            return;
+        }
+        bot.leave();
+        leaves.increment();
+        connector.execute(() -> {
+            if (signIn(bot)) {
+                joins.increment();
+            }
+        });
+    }
+
+    /**
+     * Called on a user's reader thread for every chat message it receives.
+     */
+    void received(Message message) {
+        long now = System.nanoTime();
+        String sender = message.getSender();
+        String text = message.getTextMessage();
+        if (sender == null || text == null || !sender.startsWith(profile.nicknamePrefix)) {
+            return;
+        }
+        int space = text.indexOf(' ');
+        if (space <= 0) {
+            return;
+        }
+        long due;
+        try {
+            due = Long.parseLong(text, 0, space, 10);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        latency.record(now - due);
+        intervalLatency.record(now - due);
+        received.increment();
+    }
+
+    /**
+     * Called when the server closed a user's connection; the user signs in again while the test runs.
+     */
+    void lost(Bot bot) {
+        lostConnections.increment();
+        if (running) {
+            connector.execute(() -> signIn(bot));
+        }
+    }
+
+    /**
+     * Gives messages still on their way a moment to arrive, until nothing more comes or the time is up.
+     */
+    private void drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+        long seen = -1;
+        while (System.currentTimeMillis() < deadline && received.sum() != seen) {
+            seen = received.sum();
+            Thread.sleep(100);
+        }
+    }
+
+    private void report(long start, long[] last) {
+        long sentNow = sent.sum();
+        long receivedNow = received.sum();
+        double seconds = profile.reportIntervalSeconds;
+        out.printf("%5ds %,7d online, sent %,9.0f/s, received %,11.0f/s, latency p50 %s p99 %s p999 %s%n",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), countOnline(),
+                (sentNow - last[0]) / seconds, (receivedNow - last[1]) / seconds,
+                millis(intervalLatency.getQuantileMicros(0.5)), millis(intervalLatency.getQuantileMicros(0.99)),
+                millis(intervalLatency.getQuantileMicros(0.999)));
+        last[0] = sentNow;
+        last[1] = receivedNow;
+        intervalLatency.reset();
+    }
+
+    private int countOnline() {
+        int online = 0;
+        for (Bot bot : bots) {
+            if (bot.isOnline()) {
+                online++;
+            }
+        }
+        return online;
+    }
+
+    /**
+     * Rates are per second of sending; messages that arrived while draining count towards it too.
+     */
+    private void summarize(long sendingNanos, long elapsedNanos) {
+        double seconds = sendingNanos / 1e9;
+        out.printf("Users %,d, %.2f messages/s each, %.0f%% private, churn %.1f/s, %.1f s (%.1f s with draining)%n",
+                bots.length, profile.messagesPerUserPerSecond, profile.privateShare * 100, profile.churnPerSecond, seconds, elapsedNanos / 1e9);
+        out.printf("Sent %,d messages (%,d could not be sent), %,.0f/s%n", sent.sum(), sendFailures.sum(), sent.sum() / seconds);
+        out.printf("Received %,d messages, %,.0f/s%n", received.sum(), received.sum() / seconds);
+        out.printf("Latency p50 %s, p99 %s, p999 %s, max %s%n", millis(latency.getQuantileMicros(0.5)),
+                millis(latency.getQuantileMicros(0.99)), millis(latency.getQuantileMicros(0.999)), millis(latency.getMaxMicros()));
+        out.printf("Left %,d, signed in again %,d, connections lost %,d, failed sign-ins %,d%n",
+                leaves.sum(), joins.sum(), lostConnections.sum(), signInFailures.sum());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package geekbrains.loadtest;
+
+import geekbrains.settings.Settings;
+
+/**
+ * What a load run does: how many simulated users, how much they say and how often they come and go.
+ *
+ * @author Abubakar Musanipov
+ */
+public class LoadProfile {
+
+    public String host = "localhost";
+    public int port = Settings.SERVER_PORT;
+
+    /**
+     * Users signed in at once. Their nicknames are the prefix and a five digit number; accounts that do not
+     * exist yet are registered with {@link #password} on the first run.
+     */
+    public int users = 1000;
+    public String nicknamePrefix = "bot";
+    public String password = "Load1test";
+
+    /**
+     * Messages per second sent by each user, spread evenly over time.
+     */
+    public double messagesPerUserPerSecond = 0.1;
+
+    /**
+     * Share of the messages sent privately to another user, from 0 to 1.
+     */
+    public double privateShare = 0.1;
+
+    /**
+     * Users per second that leave and sign in again, each counted once.
+     */
+    public double churnPerSecond = 0;
+
+    public int textLength = 80;
+    public long durationSeconds = 60;
+    public long reportIntervalSeconds = 5;
+    public int senderThreads = 4;
+    public int connectThreads = 16;
+    public long connectTimeoutMillis = 10000;
+}
@@ -0,0 +1,46 @@
+package geekbrains.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up. Threads add to cells of their own, so counting on a hot path neither locks nor,
+ * once the cells exist, allocates.
+ *
+ * @author Abubakar Musanipov
+ */
+public class Counter extends Metric {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String labels, String help) {
+        super(name, labels, help);
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(series("", null)).append(' ').append(get()).append('\n');
+    }
+
+    @Override
+    void writeAttributes(Map<String, Object> attributes) {
+        attributes.put(attribute(""), get());
+    }
+}
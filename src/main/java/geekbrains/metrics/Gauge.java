@@ -0,0 +1,45 @@
+package geekbrains.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A value read when the metrics are collected, such as a queue length. Nothing is recorded on the hot path.
+ * Registered as a counter, it reports a total kept elsewhere.
+ *
+ * @author Abubakar Musanipov
+ */
+public class Gauge extends Metric {
+
+    private final String type;
+    private volatile LongSupplier value;
+
+    Gauge(String name, String labels, String help, String type, LongSupplier value) {
+        super(name, labels, help);
+        this.type = type;
+        this.value = value;
+    }
+
+    void setValue(LongSupplier value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value.getAsLong();
+    }
+
+    @Override
+    String getType() {
+        return type;
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(series("", null)).append(' ').append(get()).append('\n');
+    }
+
+    @Override
+    void writeAttributes(Map<String, Object> attributes) {
+        attributes.put(attribute(""), get());
+    }
+}
@@ -0,0 +1,106 @@
+package geekbrains.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations over fixed buckets that double in width, from one microsecond to about half a
+ * minute, with everything longer in the last one. Recording finds the bucket with one bit count and adds to
+ * two striped counters: no lock, no allocation once the counters' cells exist.
+ *
+ * @author Abubakar Musanipov
+ */
+public class Histogram extends Metric {
+
+    private static final int BUCKETS = 26;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(String name, String labels, String help) {
+        super(name, labels, help);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts the duration in the first bucket whose bound it does not exceed, so 1.9 µs is counted as at most
+     * 2 µs, never as at most 1 µs.
+     */
+    public void record(long nanos) {
+        long positive = Math.max(0, nanos);
+        long micros = positive / 1000 + (positive % 1000 != 0 ? 1 : 0);
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts[Math.min(bucket, BUCKETS)].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * The upper bound, in seconds, of the bucket holding the given quantile; infinite if it is the last one.
+     */
+    public double getQuantile(double quantile) {
+        long[] snapshot = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static double upperBound(int bucket) {
+        return bucket < BUCKETS ? (1L << bucket) / 1_000_000.0 : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i].sum();
+            String bound = i < BUCKETS ? Double.toString(upperBound(i)) : "+Inf";
+            out.append(series("_bucket", "le=\"" + bound + "\"")).append(' ').append(cumulative).append('\n');
+        }
+        out.append(series("_sum", null)).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(series("_count", null)).append(' ').append(cumulative).append('\n');
+    }
+
+    @Override
+    void writeAttributes(Map<String, Object> attributes) {
+        attributes.put(attribute("_count"), getCount());
+        attributes.put(attribute("_sum_seconds"), sumNanos.sum() / 1e9);
+        attributes.put(attribute("_p50_seconds"), getQuantile(0.5));
+        attributes.put(attribute("_p99_seconds"), getQuantile(0.99));
+    }
+}
@@ -0,0 +1,84 @@
+package geekbrains.metrics;
+
+import java.util.Map;
+
+/**
+ * One named series of a {@link MetricsRegistry}. A family of series shares the name and help text and tells
+ * its members apart by their labels, given in Prometheus syntax such as {@code type="TEXT_MESSAGE"}.
+ *
+ * @author Abubakar Musanipov
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String labels;
+    private final String help;
+
+    Metric(String name, String labels, String help) {
+        this.name = name;
+        this.labels = labels;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * The Prometheus type: counter, gauge or histogram.
+     */
+    abstract String getType();
+
+    /**
+     * Appends the sample lines of this series in the Prometheus text format.
+     */
+    abstract void writeSamples(StringBuilder out);
+
+    /**
+     * Adds this series' values to a flat attribute map, as shown over JMX.
+     */
+    abstract void writeAttributes(Map<String, Object> attributes);
+
+    /**
+     * The name with the labels, as it appears in a sample line.
+     */
+    String series(String suffix, String extraLabel) {
+        StringBuilder series = new StringBuilder(name).append(suffix);
+        if (labels != null || extraLabel != null) {
+            series.append('{');
+            if (labels != null) {
+                series.append(labels);
+            }
+            if (extraLabel != null) {
+                if (labels != null) {
+                    series.append(',');
+                }
+                series.append(extraLabel);
+            }
+            series.append('}');
+        }
+        return series.toString();
+    }
+
+    /**
+     * The name with the label values, fit for a JMX attribute name.
+     */
+    String attribute(String suffix) {
+        StringBuilder attribute = new StringBuilder(name);
+        if (labels != null) {
+            for (String label : labels.split(",")) {
+                int quote = label.indexOf('"');
+                attribute.append('_').append(label, quote + 1, label.length() - 1);
+            }
+        }
+        return attribute.append(suffix).toString();
+    }
+}
@@ -0,0 +1,109 @@
+package geekbrains.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The server's metrics. Each class looks up its counters, gauges and histograms once and keeps them in fields,
+ * so recording never touches this registry; only registration and collection do. Asking for a series that
+ * already exists returns it, so a server that is stopped and started again keeps counting where it left off.
+ *
+ * @author Abubakar Musanipov
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry SHARED = new MetricsRegistry();
+    private static final String OBJECT_NAME = "geekbrains.chat:type=Metrics";
+
+    private final ConcurrentNavigableMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    public Counter counter(String name, String help) {
+        return counter(name, null, help);
+    }
+
+    public Counter counter(String name, String labels, String help) {
+        return (Counter) metrics.computeIfAbsent(key(name, labels), key -> new Counter(name, labels, help));
+    }
+
+    public Histogram histogram(String name, String labels, String help) {
+        return (Histogram) metrics.computeIfAbsent(key(name, labels), key -> new Histogram(name, labels, help));
+    }
+
+    /**
+     * A value read at collection time. Registering the name again replaces where the value is read from.
+     */
+    public Gauge gauge(String name, String help, LongSupplier value) {
+        return register(name, help, "gauge", value);
+    }
+
+    /**
+     * A total kept by some other object, reported as a counter.
+     */
+    public Gauge counterFunction(String name, String help, LongSupplier value) {
+        return register(name, help, "counter", value);
+    }
+
+    private Gauge register(String name, String help, String type, LongSupplier value) {
+        Gauge gauge = (Gauge) metrics.computeIfAbsent(key(name, null), key -> new Gauge(name, null, help, type, value));
+        gauge.setValue(value);
+        return gauge;
+    }
+
+    private static String key(String name, String labels) {
+        return labels == null ? name : name + '{' + labels + '}';
+    }
+
+    /**
+     * Every series in the Prometheus text exposition format, families in name order.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        String family = null;
+        for (Metric metric : metrics.values()) {
+            if (!metric.getName().equals(family)) {
+                family = metric.getName();
+                out.append("# HELP ").append(family).append(' ').append(metric.getHelp()).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(metric.getType()).append('\n');
+            }
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Every series as flat attributes, histograms as count, sum and two quantiles.
+     */
+    Map<String, Object> attributes() {
+        Map<String, Object> attributes = new TreeMap<>();
+        for (Metric metric : metrics.values()) {
+            metric.writeAttributes(attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Publishes the metrics as the MBean {@code geekbrains.chat:type=Metrics}; once is enough.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(objectName)) {
+            try {
+                server.registerMBean(new MetricsMBean(this), objectName);
+            } catch (InstanceAlreadyExistsException ignored) {
+            }
+        }
+    }
+}
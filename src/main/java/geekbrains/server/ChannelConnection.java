@@ -0,0 +1,204 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Frame;
+import geekbrains.connection.MessageCodec;
+import geekbrains.connection.MessageFrames;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server side of a non-blocking client connection. {@link #send(Frame)} and {@link #close()} may be
+ * called from any thread; everything else runs on the owning {@link EventLoop}.
+ *
+ * @author Abubakar Musanipov
+ */
+class ChannelConnection implements Connection {
+
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final SocketAddress remoteAddress;
+    private final OutboundQueue<ByteBuffer> outbound = OutboundQueue.fromSettings();
+    private final ArrayDeque<ByteBuffer> inFlight = new ArrayDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile MessageCodec codec = MessageCodec.SERIALIZATION;
+    private ConnectionHandler handler;
+    private ByteBuffer pendingInbound;
+    private volatile int inFlightCount;
+
+    ChannelConnection(EventLoop eventLoop, SocketChannel channel, SelectionKey key) throws IOException {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = channel.getRemoteAddress();
+    }
+
+    void open(ConnectionHandler handler) {
+        this.handler = handler;
+        handler.onOpen();
+    }
+
+    @Override
+    public void send(Frame frame) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Connection is closed");
+        }
+        boolean inEventLoop = eventLoop.inEventLoop();
+        if (!outbound.offer(frame.encoded(codec), !EventLoop.onEventLoopThread())) {
+            close();
+            throw new IOException("Slow consumer disconnected: " + remoteAddress);
+        }
+        if (inEventLoop) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return outbound.size() + inFlightCount;
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return outbound.getDropped();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void close() {
+        if (eventLoop.inEventLoop()) {
+            closeNow();
+        } else {
+            eventLoop.execute(this::closeNow);
+        }
+    }
+
+    void read(ByteBuffer sharedBuffer) {
+        try {
+            ByteBuffer buffer = pendingInbound;
+            if (buffer == null) {
+                buffer = sharedBuffer;
+                buffer.clear();
+            }
+            if (channel.read(buffer) < 0) {
+                closeNow();
+                return;
+            }
+            buffer.flip();
+            decodeFrames(buffer);
+            pendingInbound = buffer.hasRemaining() ? retain(buffer) : null;
+        } catch (Exception e) {
+            closeNow();
+        }
+    }
+
+    private void decodeFrames(ByteBuffer buffer) throws Exception {
+        while (!closed.get() && buffer.hasRemaining()) {
+            int start = buffer.position();
+            int length = MessageFrames.readLength(buffer);
+            if (length < 0 || buffer.remaining() < length) {
+                buffer.position(start);
+                return;
+            }
+            int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            MessageCodec payloadCodec = MessageCodec.forPayload(buffer.array(), offset, length);
+            if (payloadCodec == MessageCodec.BINARY) {
+                codec = MessageCodec.BINARY;
+            }
+            handler.onMessage(payloadCodec.decode(buffer.array(), offset, length));
+        }
+    }
+
+    /**
+     * Keeps the unread tail of a partial frame in a buffer private to this connection, sized for the whole
+     * frame, so idle connections hold no read buffer at all.
+     */
+    private ByteBuffer retain(ByteBuffer buffer) throws IOException {
+        ByteBuffer header = buffer.duplicate();
+        int length = MessageFrames.readLength(header);
+        int required = length < 0 ? MessageFrames.MAX_HEADER_LENGTH : header.position() - buffer.position() + length;
+        if (buffer == pendingInbound && buffer.capacity() >= required) {
+            return buffer.compact();
+        }
+        return ByteBuffer.allocate(required).put(buffer);
+    }
+
+    /**
+     * Writes as many queued frames as the socket takes, several per system call. Frames move to a list
+     * private to the event loop before they are written, so dropping the oldest queued frame can never cut
+     * a frame that is already half on the wire.
+     */
+    void flush() {
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            ByteBuffer[] batch = eventLoop.writeBatch();
+            while (true) {
+                ByteBuffer next;
+                while (inFlight.size() < batch.length && (next = outbound.poll()) != null) {
+                    inFlight.add(next);
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                int count = 0;
+                for (ByteBuffer frame : inFlight) {
+                    batch[count++] = frame;
+                }
+                channel.write(batch, 0, count);
+                while (!inFlight.isEmpty() && !inFlight.peek().hasRemaining()) {
+                    inFlight.poll();
+                }
+                Arrays.fill(batch, 0, count, null);
+                if (!inFlight.isEmpty()) {
+                    inFlightCount = inFlight.size();
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            inFlightCount = 0;
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeNow();
+        }
+    }
+
+    void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        flush();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        outbound.clear();
+        inFlight.clear();
+        inFlightCount = 0;
+        if (handler != null) {
+            handler.onClose();
+        }
+    }
+}
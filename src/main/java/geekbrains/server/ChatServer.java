@@ -0,0 +1,756 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Frame;
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageCodec;
+import geekbrains.connection.MessageType;
+import geekbrains.database.CredentialCache;
+import geekbrains.database.MessageWriter;
+import geekbrains.database.SQLService;
+import geekbrains.database.SearchQuery;
+import geekbrains.metrics.Counter;
+import geekbrains.metrics.Histogram;
+import geekbrains.metrics.MetricsEndpoint;
+import geekbrains.metrics.MetricsRegistry;
+import geekbrains.settings.Settings;
+import geekbrains.validator.Validator;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The chat server itself, free of any user interface. Everything it has to report goes to the registered
+ * {@link ServerLogSink}s, so the same core runs behind the Swing window or headless. What it counts and times
+ * goes to the shared {@link MetricsRegistry}, served over JMX and on {@link Settings#METRICS_PORT}.
+ *
+ * @author Abubakar Musanipov
+ */
+public class ChatServer {
+
+    private static final int SLOW_CONSUMERS_LOGGED = 20;
+
+    private final ServerGuiModel model = new ServerGuiModel();
+    private final List<ServerLogSink> logSinks = new CopyOnWriteArrayList<>();
+    private ServerEngine engine;
+    private volatile SQLService sqlService;
+    private volatile MessageWriter messageWriter;
+    private volatile ExecutorService historyReader;
+    private volatile RecentHistory recentHistory;
+    private volatile CredentialCache credentials;
+    private volatile ExecutorService accounts;
+    private volatile ScheduledExecutorService slowConsumerCheck;
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicReference<ServerState> state = new AtomicReference<>(ServerState.STOPPED);
+    private volatile CompletableFuture<Void> termination = CompletableFuture.completedFuture(null);
+    private MetricsEndpoint metricsEndpoint;
+
+    private final MetricsRegistry metrics = MetricsRegistry.shared();
+    private final Counter connectionsAccepted = metrics.counter("chat_connections_accepted_total", "Connections accepted.");
+    private final Counter connectionsClosed = metrics.counter("chat_connections_closed_total", "Connections closed.");
+    private final Counter[] messagesReceived = new Counter[MessageType.values().length];
+    private final Counter framesDelivered = metrics.counter("chat_frames_delivered_total", "Messages handed to connections by broadcasts.");
+    private final Counter sendErrors = metrics.counter("chat_send_errors_total", "Messages that could not be handed to a connection.");
+    private final Histogram broadcastTime = metrics.histogram("chat_broadcast_seconds", null, "Time to hand a message to every user.");
+    private final Histogram privateSendTime = metrics.histogram("chat_private_send_seconds", null, "Time to hand a private message to its recipient.");
+
+    public ChatServer() {
+        for (MessageType type : MessageType.values()) {
+            messagesReceived[type.ordinal()] = metrics.counter("chat_messages_received_total", "type=\"" + type + "\"", "Messages received from users, by type.");
+        }
+        metrics.gauge("chat_connections_open", "Connections currently open.", () -> connectionsAccepted.get() - connectionsClosed.get());
+        metrics.gauge("chat_users_online", "Users signed in.", () -> model.getAllUsersChat().size());
+        metrics.gauge("chat_outbound_queued", "Messages waiting in the outbound queues of all users.", model::getQueuedMessages);
+        metrics.gauge("chat_outbound_queue_depth_max", "Messages waiting in the fullest outbound queue.", model::getMaxOutboundQueueDepth);
+        metrics.gauge("chat_persistence_backlog", "Messages waiting to be saved.", () -> {
+            MessageWriter writer = messageWriter;
+            return writer != null ? writer.getBacklog() : 0;
+        });
+        metrics.counterFunction("chat_persistence_saved_total", "Messages saved by the current message writer.", () -> {
+            MessageWriter writer = messageWriter;
+            return writer != null ? writer.getSavedMessages() : 0;
+        });
+        metrics.counterFunction("chat_persistence_failed_total", "Messages the current message writer could not save.", () -> {
+            MessageWriter writer = messageWriter;
+            return writer != null ? writer.getFailedMessages() : 0;
+        });
+        metrics.counterFunction("chat_persistence_dropped_total", "Messages the current message writer had no room for.", () -> {
+            MessageWriter writer = messageWriter;
+            return writer != null ? writer.getDroppedMessages() : 0;
+        });
+    }
+
+    public void addLogSink(ServerLogSink sink) {
+        logSinks.add(sink);
+    }
+
+    public void removeLogSink(ServerLogSink sink) {
+        logSinks.remove(sink);
+    }
+
+    protected void log(String message) {
+        for (ServerLogSink sink : logSinks) {
+            sink.log(message);
+        }
+    }
+
+    /**
+     * Binds the engine and hands it to a dedicated acceptor thread; nothing polls for the state change.
+     */
+    public void startServer(int port) {
+        if (!state.compareAndSet(ServerState.STOPPED, ServerState.STARTING)) {
+            log("The server is already running.\n");
+            return;
+        }
+        try {
+            engine = createEngine();
+            engine.bind(port);
+            sqlService = new SQLService();
+            sqlService.createHistorySchema();
+            recentHistory = new RecentHistory(Settings.HISTORY_BUFFER_CAPACITY,
+                    messageIds.accumulateAndGet(sqlService.getLastMessageId(), Math::max));
+            messageWriter = new MessageWriter(sqlService);
+            historyReader = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "chat-history-reader"));
+            credentials = new CredentialCache(sqlService, Settings.AUTH_CACHE_TTL_MILLIS, Settings.AUTH_CACHE_CAPACITY);
+            accounts = Executors.newFixedThreadPool(Settings.DATABASE_POOL_SIZE, runnable -> new Thread(runnable, "chat-accounts"));
+            startSlowConsumerCheck();
+            termination = new CompletableFuture<>();
+            state.set(ServerState.RUNNING);
+            new Thread(this::acceptServer, "chat-acceptor").start();
+            log("Server started.\n");
+            startMetrics();
+        } catch (Exception e) {
+            closeEngine();
+            closePersistence();
+            state.set(ServerState.STOPPED);
+            log(String.format("Server failed to start: %s\n", e.getMessage()));
+        }
+    }
+
+    /**
+     * Publishes the metrics; a server whose metrics port is taken still runs, only without the endpoint.
+     */
+    private void startMetrics() {
+        try {
+            metrics.registerMBean();
+        } catch (Exception e) {
+            log(String.format("Metrics could not be registered with JMX: %s\n", e.getMessage()));
+        }
+        if (Settings.METRICS_PORT < 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(metrics, Settings.METRICS_HOST, Settings.METRICS_PORT);
+            log(String.format("Metrics are served on http://%s:%d/metrics\n", Settings.METRICS_HOST, metricsEndpoint.getPort()));
+        } catch (IOException e) {
+            log(String.format("Metrics endpoint could not start: %s\n", e.getMessage()));
+        }
+    }
+
+    /**
+     * Logs, every {@link Settings#SLOW_CONSUMER_CHECK_MILLIS}, the users whose outbound queue is at least half
+     * full or who lost messages since the last check.
+     */
+    private void startSlowConsumerCheck() {
+        if (Settings.SLOW_CONSUMER_CHECK_MILLIS <= 0) {
+            return;
+        }
+        Map<Connection, Long> lastDropped = new HashMap<>();
+        int minDepth = Math.max(1, Settings.SERVER_OUTBOUND_QUEUE_CAPACITY / 2);
+        slowConsumerCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-slow-consumers");
+            thread.setDaemon(true);
+            return thread;
+        });
+        slowConsumerCheck.scheduleWithFixedDelay(() -> {
+            List<String> slow = model.getSlowConsumers(minDepth, lastDropped);
+            if (slow.size() > SLOW_CONSUMERS_LOGGED) {
+                log(String.format("Slow consumers: %s and %d more\n", String.join(", ", slow.subList(0, SLOW_CONSUMERS_LOGGED)),
+                        slow.size() - SLOW_CONSUMERS_LOGGED));
+            } else if (!slow.isEmpty()) {
+                log(String.format("Slow consumers: %s\n", String.join(", ", slow)));
+            }
+        }, Settings.SLOW_CONSUMER_CHECK_MILLIS, Settings.SLOW_CONSUMER_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopMetrics() {
+        MetricsEndpoint endpoint = metricsEndpoint;
+        metricsEndpoint = null;
+        if (endpoint != null) {
+            endpoint.close();
+        }
+    }
+
+    private ServerEngine createEngine() {
+        switch (Settings.SERVER_ENGINE) {
+            case "thread":
+                return ThreadPerConnectionServer.platformThreads(ChatSession::new);
+            case "virtual":
+                return ThreadPerConnectionServer.virtualThreads(ChatSession::new);
+            case "nio":
+                return new NioServer(ChatSession::new, Settings.SERVER_EVENT_LOOPS);
+            default:
+                throw new IllegalArgumentException("Unknown server engine: " + Settings.SERVER_ENGINE);
+        }
+    }
+
+    public void stopServer() {
+        if (!state.compareAndSet(ServerState.RUNNING, ServerState.DRAINING)) {
+            log("The server is not running - there is nothing to stop!\n");
+            return;
+        }
+        for (Connection connection : model.getAllUsersChat().values()) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            engine.close();
+        } catch (Exception e) {
+            log(String.format("The server engine could not be closed: %s\n", e.getMessage()));
+        }
+        model.clear();
+        try {
+            closePersistence();
+        } catch (RuntimeException e) {
+            log(String.format("Message history could not be closed: %s\n", e.getMessage()));
+        }
+        try {
+            stopMetrics();
+        } catch (RuntimeException e) {
+            log(String.format("The metrics endpoint could not be closed: %s\n", e.getMessage()));
+        }
+        state.set(ServerState.STOPPED);
+        termination.complete(null);
+        log("Server stopped.\n");
+    }
+
+    private void closeEngine() {
+        try {
+            if (engine != null) {
+                engine.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void closePersistence() {
+        ScheduledExecutorService check = slowConsumerCheck;
+        slowConsumerCheck = null;
+        if (check != null) {
+            check.shutdownNow();
+        }
+        ExecutorService reader = historyReader;
+        historyReader = null;
+        recentHistory = null;
+        if (reader != null) {
+            reader.shutdownNow();
+        }
+        ExecutorService accountTasks = accounts;
+        accounts = null;
+        credentials = null;
+        if (accountTasks != null) {
+            accountTasks.shutdownNow();
+        }
+        MessageWriter writer = messageWriter;
+        messageWriter = null;
+        if (writer != null) {
+            try {
+                writer.close();
+                log(String.format("Saved %d messages in %d transactions (%d failed, %d messages lost, %d dropped), longest flush %d ms.\n",
+                        writer.getSavedMessages(), writer.getTransactions(), writer.getFailedTransactions(),
+                        writer.getFailedMessages(), writer.getDroppedMessages(), writer.getMaxFlushMicros() / 1000));
+            } catch (Exception e) {
+                log("Message history could not be saved.\n");
+            }
+        }
+        SQLService service = sqlService;
+        sqlService = null;
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    /**
+     * Queues a stamped message for the history table; the caller never waits on the database.
+     */
+    protected void persist(Message message) {
+        MessageWriter writer = messageWriter;
+        if (writer != null && !writer.save(message) && writer.getDroppedMessages() % 1000 == 1) {
+            log(String.format("Message history backlog is full, %d messages were not saved so far.\n", writer.getDroppedMessages()));
+        }
+    }
+
+    /**
+     * Waits for the history writer to save everything queued so far, so a rename that follows sees those rows.
+     */
+    protected void awaitHistoryWritten() throws SQLException {
+        MessageWriter writer = messageWriter;
+        try {
+            if (writer != null && !writer.awaitWritten(Settings.DATABASE_BORROW_TIMEOUT_MILLIS)) {
+                throw new SQLException("Message history is not written yet");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while message history was written", e);
+        }
+    }
+
+    /**
+     * Sends one page of room history, newest messages first from memory. Only a page reaching past the
+     * recent-history buffer goes to the database, on the history thread so no engine thread waits for it.
+     * The page carries the id to ask for next, or 0 once the beginning of the history is reached.
+     */
+    protected void sendHistory(Connection connection, String room, long beforeId, int limit) {
+        RecentHistory recent = recentHistory;
+        ExecutorService reader = historyReader;
+        SQLService service = sqlService;
+        if (recent == null || reader == null || service == null || limit <= 0) {
+            return;
+        }
+        List<Message> page = new ArrayList<>(limit);
+        long lowest = recent.collect(room, beforeId, limit, page);
+        if (page.size() == limit || lowest <= 1) {
+            Collections.reverse(page);
+            sendHistoryPage(connection, room, page, page.size() < limit ? 0 : page.get(0).getId());
+            return;
+        }
+        long olderThan = beforeId > 0 ? Math.min(beforeId, lowest) : lowest;
+        try {
+            reader.execute(() -> {
+                try {
+                    List<Message> older = service.loadHistory(room, olderThan, limit - page.size());
+                    long nextBeforeId = older.size() < limit - page.size() ? 0 : older.get(0).getId();
+                    Collections.reverse(page);
+                    older.addAll(page);
+                    sendHistoryPage(connection, room, older, nextBeforeId);
+                } catch (SQLException e) {
+                    log(String.format("Message history could not be read: %s\n", e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * Runs a full-text search on the history thread and sends back one page of hits. A query FTS5 cannot
+     * handle simply finds nothing.
+     */
+    protected void sendSearchResults(Connection connection, String viewer, String room, String query, long offset) {
+        ExecutorService reader = historyReader;
+        SQLService service = sqlService;
+        if (reader == null || service == null || query == null) {
+            return;
+        }
+        int limit = Settings.SEARCH_PAGE_SIZE;
+        try {
+            reader.execute(() -> {
+                List<Message> results;
+                try {
+                    results = service.search(SearchQuery.parse(query), room, viewer, offset, limit + 1);
+                } catch (SQLException e) {
+                    log(String.format("Search for \"%s\" failed: %s\n", query, e.getMessage()));
+                    results = new ArrayList<>();
+                }
+                long nextOffset = 0;
+                if (results.size() > limit) {
+                    results.remove(limit);
+                    nextOffset = offset + limit;
+                }
+                try {
+                    connection.send(Message.searchResults(room, query, results, nextOffset));
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * Runs an account task on the accounts pool, so signing in, registering and renaming never hold up an engine
+     * thread while the users table is queried.
+     */
+    protected void runAccountTask(Runnable task) {
+        ExecutorService accountTasks = accounts;
+        if (accountTasks == null) {
+            return;
+        }
+        try {
+            accountTasks.execute(task);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void sendHistoryPage(Connection connection, String room, List<Message> page, long nextBeforeId) {
+        try {
+            connection.send(Message.historyPage(room, page, nextBeforeId));
+        } catch (IOException ignored) {
+        }
+    }
+
+    public MessageWriter getMessageWriter() {
+        return messageWriter;
+    }
+
+    protected void acceptServer() {
+        try {
+            engine.serve();
+        } catch (Exception e) {
+            if (state.get() == ServerState.RUNNING) {
+                log("Server connection lost.\n");
+                stopServer();
+            }
+        }
+    }
+
+    /**
+     * Delivers a message to every user; stamped room messages are also kept in the recent history.
+     */
+    protected void sendMessageAllUsers(Message message) {
+        RecentHistory recent = recentHistory;
+        if (recent != null && message.isStamped() && message.getRecipient() == null) {
+            recent.add(message);
+        }
+        long start = System.nanoTime();
+        Frame frame = new Frame(message);
+        int delivered = 0;
+        for (Map.Entry<String, Connection> user : model.getAllUsersChat().entrySet()) {
+            try {
+                user.getValue().send(frame);
+                delivered++;
+            } catch (Exception e) {
+                sendErrors.increment();
+                log("Error sending message to all users!\n");
+            }
+        }
+        framesDelivered.add(delivered);
+        broadcastTime.recordSince(start);
+    }
+
+    protected void sendPrivateMessage(String recipient, Message message) {
+        Connection connection = model.getConnection(recipient);
+        if (connection == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            connection.send(message);
+        } catch (Exception e) {
+            sendErrors.increment();
+            log(String.format("Error sending private message to %s!\n", recipient));
+        }
+        privateSendTime.recordSince(start);
+    }
+
+    /**
+     * Gives a message accepted from a user its place in the chat: a monotonic id and the server time.
+     */
+    protected Message stamp(Message message) {
+        return message.withServerStamp(messageIds.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    /**
+     * The signed-in users, for tools in this package that drive a server without sockets.
+     */
+    ServerGuiModel getModel() {
+        return model;
+    }
+
+    public boolean isServerStart() {
+        return state.get() == ServerState.RUNNING;
+    }
+
+    public ServerState getState() {
+        return state.get();
+    }
+
+    /**
+     * Completes when the server currently running (or the last one) has fully stopped.
+     */
+    public CompletableFuture<Void> getTermination() {
+        return termination;
+    }
+
+    /**
+     * Chat protocol state of a single connection. The engine delivers messages one at a time, so the session
+     * needs no locking of its own whichever thread it runs on.
+     */
+    private class ChatSession implements ConnectionHandler {
+
+        private final Connection connection;
+        private volatile String nickname;
+        private volatile boolean authenticating;
+        private volatile boolean closed;
+        private boolean disabled;
+
+        public ChatSession(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onOpen() {
+            connectionsAccepted.increment();
+            log(String.format("A new user connected with a remote socket - %s.\n", connection.getRemoteAddress()));
+            requestNickname();
+        }
+
+        @Override
+        public void onMessage(Message message) throws Exception {
+            if (message.getHistory() != null) {
+                throw new IOException("Only the server sends history");
+            }
+            if (message.getTypeMessage() != null) {
+                messagesReceived[message.getTypeMessage().ordinal()].increment();
+            }
+            if (nickname == null) {
+                requestAndAddingUser(message);
+            } else {
+                messagingBetweenUsers(message);
+            }
+        }
+
+        @Override
+        public void onClose() {
+            connectionsClosed.increment();
+            closed = true;
+            if (disabled) {
+                return;
+            }
+            String nickname = this.nickname;
+            if (nickname == null) {
+                log("There was an error requesting and adding a new user\n");
+            } else {
+                log(String.format("An error occurred while sending a message from the user %s, either disconnected!\n", nickname));
+                model.removeUser(nickname, connection);
+            }
+        }
+
+        private void requestNickname() {
+            try {
+                connection.send(Settings.BINARY_CODEC_ENABLED
+                        ? new Message(MessageType.REQUEST_NICKNAME, MessageCodec.BINARY.getName())
+                        : new Message(MessageType.REQUEST_NICKNAME));
+            } catch (IOException e) {
+                closeConnection();
+            }
+        }
+
+        /**
+         * Checks the credentials of the nickname reply on the accounts pool, registering the account first if
+         * asked to, and only then lets the user into the chat.
+         */
+        private void requestAndAddingUser(Message responseMessage) {
+            MessageType type = responseMessage.getTypeMessage();
+            String nickname = responseMessage.getSender();
+            String password = responseMessage.getTextMessage();
+            if (authenticating) {
+                return;
+            }
+            if ((type != MessageType.NICKNAME && type != MessageType.REGISTRATION) || nickname == null || password == null) {
+                rejectNickname(new Message(MessageType.AUTHENTICATION_FAILED, "Nickname and password are required"));
+                return;
+            }
+            authenticating = true;
+            runAccountTask(() -> {
+                try {
+                    String failure = type == MessageType.REGISTRATION ? register(nickname, password) : signIn(nickname, password);
+                    if (failure != null) {
+                        log(String.format("User %s could not sign in: %s\n", nickname, failure));
+                        rejectNickname(new Message(MessageType.AUTHENTICATION_FAILED, failure));
+                    } else if (!model.reserveNickname(nickname, connection)) {
+                        rejectNickname(new Message(MessageType.NICKNAME_USED));
+                    } else {
+                        addUser(nickname);
+                    }
+                } catch (SQLException e) {
+                    log(String.format("Accounts could not be checked: %s\n", e.getMessage()));
+                    rejectNickname(new Message(MessageType.AUTHENTICATION_FAILED, "The server could not check the account, try again later"));
+                } finally {
+                    authenticating = false;
+                }
+            });
+        }
+
+        private String signIn(String nickname, String password) throws SQLException {
+            CredentialCache cache = credentials;
+            if (cache == null) {
+                throw new SQLException("The server is stopping");
+            }
+            return cache.verify(nickname, password) ? null : "Invalid username or password";
+        }
+
+        private String register(String nickname, String password) throws SQLException {
+            if (!Validator.isValidNickname(nickname) || !Validator.isValidPassword(password)) {
+                return "Invalid username or password";
+            }
+            SQLService service = sqlService;
+            if (service == null) {
+                throw new SQLException("The server is stopping");
+            }
+            if (service.getNickname(nickname) != null) {
+                return "This username is already registered";
+            }
+            service.registration(nickname, password);
+            return null;
+        }
+
+        private void addUser(String nickname) {
+            this.nickname = nickname;
+            if (closed) {
+                model.removeUser(nickname, connection);
+                return;
+            }
+            try {
+                connection.send(new Message(MessageType.NICKNAME_ACCEPTED, model.getNicknames()));
+            } catch (IOException e) {
+                closeConnection();
+                return;
+            }
+            sendMessageAllUsers(new Message(MessageType.USER_ADDED, nickname));
+            sendHistory(connection, Settings.DEFAULT_ROOM, 0, Settings.HISTORY_JOIN_BACKLOG);
+        }
+
+        private void rejectNickname(Message reason) {
+            try {
+                connection.send(reason);
+            } catch (IOException e) {
+                closeConnection();
+                return;
+            }
+            requestNickname();
+        }
+
+        private void messagingBetweenUsers(Message message) throws Exception {
+            if (message.getTypeMessage() == MessageType.TEXT_MESSAGE) {
+                Message stamped = stamp(new Message(MessageType.TEXT_MESSAGE, nickname, null, Settings.DEFAULT_ROOM, message.getTextMessage()));
+                sendMessageAllUsers(stamped);
+                persist(stamped);
+            }
+            if (message.getTypeMessage() == MessageType.PRIVATE_TEXT_MESSAGE && message.getRecipient() != null) {
+                String recipient = message.getRecipient();
+                Message stamped = stamp(new Message(MessageType.PRIVATE_TEXT_MESSAGE, nickname, recipient, Settings.DEFAULT_ROOM, message.getTextMessage()));
+                sendPrivateMessage(recipient, stamped);
+                persist(stamped);
+            }
+            if (message.getTypeMessage() == MessageType.NICKNAME_CHANGED && message.getTextMessage() != null) {
+                String newNickname = message.getTextMessage();
+                runAccountTask(() -> nicknameChanged(newNickname));
+            }
+            if (message.getTypeMessage() == MessageType.HISTORY_REQUEST) {
+                String room = message.getRoom() != null ? message.getRoom() : Settings.DEFAULT_ROOM;
+                sendHistory(connection, room, message.getId(), Settings.HISTORY_PAGE_SIZE);
+            }
+            if (message.getTypeMessage() == MessageType.SEARCH_REQUEST) {
+                String room = message.getRoom() != null ? message.getRoom() : Settings.DEFAULT_ROOM;
+                sendSearchResults(connection, nickname, room, message.getTextMessage(), Math.max(0, message.getId()));
+            }
+            if (message.getTypeMessage() == MessageType.DISABLE_USER) {
+                disableUser();
+            }
+        }
+
+        /**
+         * Renames the account first and the online user once the database has the new nickname, so until then the
+         * session keeps its old one everywhere. A refused rename is logged with its reason and the user is told
+         * with {@link MessageType#NICKNAME_USED}.
+         */
+        private void nicknameChanged(String newNickname) {
+            String oldNickname = nickname;
+            String failure = rename(oldNickname, newNickname);
+            if (failure != null) {
+                log(String.format("User %s could not take the nickname %s: %s.\n", oldNickname, newNickname, failure));
+                try {
+                    connection.send(new Message(MessageType.NICKNAME_USED, newNickname));
+                } catch (IOException ignored) {
+                }
+                return;
+            }
+            Message stamped = stamp(new Message(MessageType.NICKNAME_CHANGED, oldNickname, null, Settings.DEFAULT_ROOM, newNickname));
+            sendMessageAllUsers(stamped);
+            persist(stamped);
+        }
+
+        /**
+         * Returns null once the account and the session carry the new nickname, otherwise why they do not.
+         */
+        private String rename(String oldNickname, String newNickname) {
+            SQLService service = sqlService;
+            CredentialCache cache = credentials;
+            if (service == null || cache == null) {
+                return "the server is stopping";
+            }
+            if (!Validator.isValidNickname(newNickname)) {
+                return "the nickname is not valid";
+            }
+            try {
+                if (service.getNickname(newNickname) != null) {
+                    return "it is already in use";
+                }
+                awaitHistoryWritten();
+                if (!service.changeNick(oldNickname, newNickname)) {
+                    return "the account no longer exists";
+                }
+            } catch (SQLException e) {
+                return "the account could not be renamed: " + e.getMessage();
+            }
+            if (!model.renameUser(oldNickname, newNickname, connection)) {
+                try {
+                    service.changeNick(newNickname, oldNickname);
+                } catch (SQLException e) {
+                    log(String.format("The account %s could not be renamed back to %s: %s\n", newNickname, oldNickname, e.getMessage()));
+                }
+                return "it is already in use";
+            }
+            nickname = newNickname;
+            cache.invalidate(oldNickname);
+            moveLateHistory(service, oldNickname, newNickname);
+            return null;
+        }
+
+        /**
+         * Messages this user sent under the old nickname while the account was being renamed reach the database
+         * after the rename; they are moved to the new nickname once written.
+         */
+        private void moveLateHistory(SQLService service, String oldNickname, String newNickname) {
+            long lastId = messageIds.get();
+            try {
+                awaitHistoryWritten();
+                service.moveHistory(oldNickname, newNickname, lastId);
+            } catch (SQLException e) {
+                log(String.format("History of %s could not be moved to %s: %s\n", oldNickname, newNickname, e.getMessage()));
+            }
+        }
+
+        private void disableUser() {
+            Message stamped = stamp(new Message(MessageType.REMOVED_USER, nickname, null, Settings.DEFAULT_ROOM, nickname));
+            sendMessageAllUsers(stamped);
+            persist(stamped);
+            model.removeUser(nickname, connection);
+            disabled = true;
+            closeConnection();
+            log(String.format("Remote access user %s disconnected.\n", connection.getRemoteAddress()));
+        }
+
+        private void closeConnection() {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package geekbrains.server;
+
+import geekbrains.connection.Message;
+
+/**
+ * @author Abubakar Musanipov
+ */
+public interface ConnectionHandler {
+
+    void onOpen();
+
+    void onMessage(Message message) throws Exception;
+
+    void onClose();
+}
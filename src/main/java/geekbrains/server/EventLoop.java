@@ -0,0 +1,132 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * A single selector thread owning a set of connections. All channel reads, writes and closes happen on this
+ * thread; other threads hand work over through {@link #execute(Runnable)}.
+ *
+ * @author Abubakar Musanipov
+ */
+class EventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BATCH_SIZE = 64;
+    private static final ThreadLocal<Boolean> EVENT_LOOP_THREAD = ThreadLocal.withInitial(() -> false);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteBuffer[] writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+    private volatile boolean running = true;
+
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Whether the caller is any event loop's thread, which must never wait: every client of that loop would
+     * wait with it.
+     */
+    static boolean onEventLoopThread() {
+        return EVENT_LOOP_THREAD.get();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    ByteBuffer[] writeBatch() {
+        return writeBatch;
+    }
+
+    void register(SocketChannel channel, Function<Connection, ConnectionHandler> handlerFactory) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                ChannelConnection connection = new ChannelConnection(this, channel, key);
+                key.attach(connection);
+                connection.open(handlerFactory.apply(connection));
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        EVENT_LOOP_THREAD.set(true);
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                break;
+            }
+            runTasks();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ChannelConnection connection = (ChannelConnection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    connection.read(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+        }
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) {
+                ((ChannelConnection) key.attachment()).closeNow();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
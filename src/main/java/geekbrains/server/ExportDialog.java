@@ -0,0 +1,140 @@
+package geekbrains.server;
+
+import geekbrains.database.ExportFormat;
+import geekbrains.database.HistoryExporter;
+import geekbrains.database.SearchQuery;
+
+import javax.swing.*;
+import javax.swing.border.LineBorder;
+import java.awt.*;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Exports the chat history to a file. The export runs on a thread of its own and reports its progress here;
+ * closing the dialog does not stop it, Cancel does.
+ *
+ * @author Abubakar Musanipov
+ */
+public class ExportDialog extends JDialog {
+
+    private final JTextField textFieldRoom;
+    private final JTextField textFieldUser;
+    private final JTextField textFieldAfter;
+    private final JTextField textFieldBefore;
+    private final JComboBox<ExportFormat> comboBoxFormat;
+    private final JCheckBox checkBoxGzip;
+    private final JProgressBar progressBar;
+    private final JButton buttonExport;
+    private HistoryExporter exporter;
+
+    public ExportDialog(Frame parent) {
+        super(parent, "Export history", false);
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.fill = GridBagConstraints.HORIZONTAL;
+
+        textFieldRoom = addField(panel, gridBagConstraints, 0, "Room (empty for all): ");
+        textFieldUser = addField(panel, gridBagConstraints, 1, "User: ");
+        textFieldAfter = addField(panel, gridBagConstraints, 2, "After (yyyy-MM-dd): ");
+        textFieldBefore = addField(panel, gridBagConstraints, 3, "Before (yyyy-MM-dd): ");
+        comboBoxFormat = new JComboBox<>(ExportFormat.values());
+        addRow(panel, gridBagConstraints, 4, "Format: ", comboBoxFormat);
+        checkBoxGzip = new JCheckBox("Compress (gzip)");
+        addRow(panel, gridBagConstraints, 5, "", checkBoxGzip);
+        panel.setBorder(new LineBorder(Color.GRAY));
+
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+
+        buttonExport = new JButton("Export");
+        buttonExport.addActionListener(e -> chooseFileAndExport());
+        JButton buttonCancel = new JButton("Cancel");
+        buttonCancel.addActionListener(e -> {
+            if (exporter != null) {
+                exporter.cancel();
+            } else {
+                setVisible(false);
+            }
+        });
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(progressBar);
+        buttonPanel.add(buttonExport);
+        buttonPanel.add(buttonCancel);
+
+        getContentPane().add(panel, BorderLayout.CENTER);
+        getContentPane().add(buttonPanel, BorderLayout.PAGE_END);
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    private static JTextField addField(JPanel panel, GridBagConstraints gridBagConstraints, int row, String label) {
+        JTextField textField = new JTextField(20);
+        addRow(panel, gridBagConstraints, row, label, textField);
+        return textField;
+    }
+
+    private static void addRow(JPanel panel, GridBagConstraints gridBagConstraints, int row, String label, JComponent component) {
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = row;
+        gridBagConstraints.gridwidth = 1;
+        panel.add(new JLabel(label), gridBagConstraints);
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridwidth = 2;
+        panel.add(component, gridBagConstraints);
+    }
+
+    private void chooseFileAndExport() {
+        ExportFormat format = (ExportFormat) comboBoxFormat.getSelectedItem();
+        boolean gzip = checkBoxGzip.isSelected();
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("chat-history." + format.getExtension() + (gzip ? ".gz" : "")));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION || fileChooser.getSelectedFile() == null) {
+            return;
+        }
+        StringBuilder filter = new StringBuilder();
+        appendFilter(filter, "from:", textFieldUser.getText());
+        appendFilter(filter, "after:", textFieldAfter.getText());
+        appendFilter(filter, "before:", textFieldBefore.getText());
+        String room = textFieldRoom.getText().trim();
+
+        HistoryExporter task = new HistoryExporter();
+        exporter = task;
+        buttonExport.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setString("Starting...");
+        File file = fileChooser.getSelectedFile();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.export(file.toPath(), format, gzip, room.isEmpty() ? null : room, SearchQuery.parse(filter.toString()),
+                        (rows, fraction) -> SwingUtilities.invokeLater(() -> {
+                            progressBar.setValue((int) (fraction * 1000));
+                            progressBar.setString(String.format("%,d messages", rows));
+                        }));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, runnable -> new Thread(runnable, "chat-history-export").start()).whenComplete((rows, error) -> SwingUtilities.invokeLater(() -> {
+            exporter = null;
+            buttonExport.setEnabled(true);
+            if (error == null) {
+                progressBar.setString(String.format("Exported %,d messages", rows));
+            } else if (error.getCause() instanceof CancellationException) {
+                progressBar.setValue(0);
+                progressBar.setString("Cancelled");
+            } else {
+                progressBar.setString("Failed");
+                JOptionPane.showMessageDialog(this, "Export failed: " + error.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    private static void appendFilter(StringBuilder filter, String key, String value) {
+        if (!value.trim().isEmpty()) {
+            filter.append(' ').append(key).append(value.trim());
+        }
+    }
+}
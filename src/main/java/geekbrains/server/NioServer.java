@@ -0,0 +1,74 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.settings.Settings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Function;
+
+/**
+ * Non-blocking server: the calling thread accepts sockets and hands each one to one of a fixed number of
+ * {@link EventLoop}s, which then owns the connection for its whole life.
+ *
+ * @author Abubakar Musanipov
+ */
+public class NioServer implements ServerEngine {
+
+    private final Function<Connection, ConnectionHandler> handlerFactory;
+    private final int eventLoopCount;
+    private EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private int nextEventLoop;
+
+    public NioServer(Function<Connection, ConnectionHandler> handlerFactory, int eventLoopCount) {
+        this.handlerFactory = handlerFactory;
+        this.eventLoopCount = Math.max(1, eventLoopCount);
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port), Settings.SERVER_ACCEPT_BACKLOG);
+            eventLoops = new EventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops[i] = new EventLoop("chat-event-loop-" + i);
+                eventLoops[i].start();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel channel = serverChannel.accept();
+            eventLoops[nextEventLoop].register(channel, handlerFactory);
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serverChannel != null && serverChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (eventLoops != null) {
+            for (EventLoop eventLoop : eventLoops) {
+                if (eventLoop != null) {
+                    eventLoop.shutdown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package geekbrains.server;
+
+import geekbrains.metrics.Counter;
+import geekbrains.metrics.MetricsRegistry;
+import geekbrains.settings.Settings;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of messages waiting to be written to one client. Producers are the threads of other users,
+ * so a full queue must never hold them up for longer than the configured policy allows. The queue is linked and
+ * bounded by its count, so an idle connection holds no array sized for the capacity.
+ *
+ * @author Abubakar Musanipov
+ */
+class OutboundQueue<T> {
+
+    private static final Counter DROPPED = MetricsRegistry.shared().counter("chat_outbound_dropped_total",
+            "Queued messages discarded to make room for newer ones.");
+    private static final Counter SLOW_CONSUMERS = MetricsRegistry.shared().counter("chat_slow_consumer_disconnects_total",
+            "Connections closed because their outbound queue stayed full.");
+
+    private final LinkedBlockingQueue<T> queue;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+    private final AtomicLong dropped = new AtomicLong();
+
+    OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    static <T> OutboundQueue<T> fromSettings() {
+        return new OutboundQueue<>(Settings.SERVER_OUTBOUND_QUEUE_CAPACITY,
+                OverflowPolicy.valueOf(Settings.SERVER_OUTBOUND_OVERFLOW_POLICY),
+                Settings.SERVER_OUTBOUND_BLOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Returns false when the consumer is too slow and its connection has to be dropped.
+     *
+     * @param mayBlock false when the caller is an event loop thread: it would stall every client of its loop, or
+     *                 wait for itself, so under {@link OverflowPolicy#BLOCK} it disconnects the consumer instead
+     */
+    boolean offer(T item, boolean mayBlock) throws InterruptedIOException {
+        if (queue.offer(item)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                        DROPPED.increment();
+                    }
+                } while (!queue.offer(item));
+                return true;
+            case BLOCK:
+                try {
+                    if (mayBlock && queue.offer(item, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a slow consumer");
+                }
+                SLOW_CONSUMERS.increment();
+                return false;
+            default:
+                SLOW_CONSUMERS.increment();
+                return false;
+        }
+    }
+
+    T poll() {
+        return queue.poll();
+    }
+
+    T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Discards everything still queued and leaves only the sentinel, which tells the writer to stop.
+     */
+    void close(T sentinel) {
+        queue.clear();
+        while (!queue.offer(sentinel)) {
+            queue.poll();
+        }
+    }
+
+    void clear() {
+        queue.clear();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+}
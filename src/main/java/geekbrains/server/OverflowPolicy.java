@@ -0,0 +1,16 @@
+package geekbrains.server;
+
+/**
+ * What happens to a message sent to a connection whose outbound queue is full.
+ *
+ * @author Abubakar Musanipov
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DISCONNECT,
+    /**
+     * Waits up to {@link geekbrains.settings.Settings#SERVER_OUTBOUND_BLOCK_TIMEOUT_MILLIS}, then disconnects. A
+     * sender on an event loop thread never waits and disconnects at once.
+     */
+    BLOCK,
+}
@@ -0,0 +1,83 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Frame;
+import geekbrains.connection.Network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Blocking connection whose sends only enqueue; a dedicated writer task does the socket writes, so a peer
+ * with a full TCP buffer delays nobody but itself.
+ *
+ * @author Abubakar Musanipov
+ */
+class QueuedConnection implements Connection, Runnable {
+
+    private static final Frame CLOSE = new Frame(null);
+
+    private final Network network;
+    private final OutboundQueue<Frame> outbound = OutboundQueue.fromSettings();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Thread writer;
+
+    QueuedConnection(Network network) {
+        this.network = network;
+    }
+
+    Network getNetwork() {
+        return network;
+    }
+
+    @Override
+    public void send(Frame frame) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Connection is closed");
+        }
+        if (!outbound.offer(frame, Thread.currentThread() != writer)) {
+            close();
+            throw new IOException("Slow consumer disconnected: " + getRemoteAddress());
+        }
+    }
+
+    @Override
+    public void run() {
+        writer = Thread.currentThread();
+        try {
+            Frame frame;
+            while ((frame = outbound.take()) != CLOSE) {
+                network.send(frame);
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return outbound.size();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return outbound.getDropped();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return network.getRemoteAddress();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            outbound.close(CLOSE);
+            try {
+                network.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package geekbrains.server;
+
+import geekbrains.connection.Message;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent room messages, kept in memory so joins and the first pages of history never touch the
+ * database. Each message lands in the slot picked by its server id, so adding is a plain array store and
+ * concurrent broadcasts never wait for each other; a newer message simply overwrites the one a full lap
+ * older.
+ *
+ * @author Abubakar Musanipov
+ */
+class RecentHistory {
+
+    private final AtomicReferenceArray<Message> slots;
+    private final int mask;
+    private final long floor;
+    private final AtomicLong newest;
+
+    /**
+     * @param capacity how many messages to keep, rounded up to a power of two
+     * @param floor    the last id given out before this buffer existed; older messages are only in the database
+     */
+    RecentHistory(int capacity, long floor) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.floor = floor;
+        this.newest = new AtomicLong(floor);
+    }
+
+    void add(Message message) {
+        long id = message.getId();
+        slots.set((int) (id & mask), message);
+        if (newest.get() < id) {
+            newest.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    /**
+     * Adds to {@code page}, newest first, up to {@code limit} messages of the room older than {@code beforeId}
+     * (0 for the newest). Returns the lowest id this buffer still answers for: if the page is not full, whatever
+     * else exists is older than that and has to come from the database.
+     */
+    long collect(String room, long beforeId, int limit, List<Message> page) {
+        long top = newest.get();
+        long lowest = Math.max(floor, top - slots.length()) + 1;
+        long from = beforeId > 0 ? Math.min(beforeId - 1, top) : top;
+        for (long id = from; id >= lowest && page.size() < limit; id--) {
+            Message message = slots.get((int) (id & mask));
+            if (message != null && message.getId() == id && room.equals(message.getRoom())) {
+                page.add(message);
+            }
+        }
+        return lowest;
+    }
+}
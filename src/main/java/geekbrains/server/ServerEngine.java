@@ -0,0 +1,19 @@
+package geekbrains.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @author Abubakar Musanipov
+ */
+public interface ServerEngine extends Closeable {
+
+    void bind(int port) throws IOException;
+
+    /**
+     * Accepts connections on the calling thread until the engine is closed.
+     */
+    void serve() throws IOException;
+
+    boolean isOpen();
+}
@@ -0,0 +1,250 @@
+package geekbrains.server;
+
+import geekbrains.settings.Settings;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server's event log. Logging only stamps the event and puts it in a bounded queue, so a network thread
+ * never waits for a disk or a window; a full queue drops the event and counts it. A single writer thread
+ * appends whatever has queued up to {@code server.log}, which is renamed aside once it grows past
+ * {@link Settings#SERVER_LOG_MAX_FILE_BYTES} or is older than {@link Settings#SERVER_LOG_ROTATE_MILLIS}, keeping
+ * the newest {@link Settings#SERVER_LOG_MAX_FILES} of those.
+ * <p>
+ * Tails see the same events, one call per written batch and at most {@link Settings#SERVER_LOG_TAIL_LINES}
+ * lines of it, so a window showing the log can never be flooded.
+ *
+ * @author Abubakar Musanipov
+ */
+public class ServerEventLog implements ServerLogSink, AutoCloseable {
+
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+    private static final String FILE_NAME = "server.log";
+    private static final Event CLOSE = new Event(0, null, null);
+
+    private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(Settings.SERVER_LOG_QUEUE_CAPACITY);
+    private final List<ServerLogSink> tails = new CopyOnWriteArrayList<>();
+    private final Path directory;
+    private final Thread writer;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile long writtenEvents;
+    private volatile long failedWrites;
+    private Writer out;
+    private long fileBytes;
+    private long fileOpenedAt;
+    private long formattedSecond = -1;
+    private String formattedPrefix;
+
+    public ServerEventLog(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::writeLoop, "chat-event-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the event without waiting. It is dropped if the writer is that far behind.
+     */
+    @Override
+    public void log(String message) {
+        if (!queue.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), message))) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds a sink that gets the written events, called on the writer thread.
+     */
+    public void addTail(ServerLogSink tail) {
+        tails.add(tail);
+    }
+
+    public void removeTail(ServerLogSink tail) {
+        tails.remove(tail);
+    }
+
+    private void writeLoop() {
+        List<Event> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                Event first = queue.take();
+                if (first == CLOSE) {
+                    break;
+                }
+                batch.add(first);
+                queue.drainTo(batch, Settings.SERVER_LOG_BATCH_SIZE - 1);
+                closing = batch.remove(CLOSE);
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            write(batch);
+        }
+        while (queue.drainTo(batch, Settings.SERVER_LOG_BATCH_SIZE) > 0) {
+            batch.remove(CLOSE);
+            write(batch);
+        }
+        closeFile();
+    }
+
+    private void write(List<Event> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            rotateIfNeeded();
+            StringBuilder text = new StringBuilder();
+            for (Event event : batch) {
+                append(text, event);
+            }
+            String lines = text.toString();
+            out.write(lines);
+            out.flush();
+            fileBytes += lines.getBytes(StandardCharsets.UTF_8).length;
+            writtenEvents += batch.size();
+        } catch (IOException e) {
+            failedWrites++;
+            closeFile();
+        }
+        publish(batch);
+        batch.clear();
+    }
+
+    private void publish(List<Event> batch) {
+        if (tails.isEmpty()) {
+            return;
+        }
+        int skipped = Math.max(0, batch.size() - Settings.SERVER_LOG_TAIL_LINES);
+        StringBuilder text = new StringBuilder();
+        if (skipped > 0) {
+            text.append(String.format("... %d events not shown, see %s\n", skipped, directory.resolve(FILE_NAME)));
+        }
+        for (Event event : batch.subList(skipped, batch.size())) {
+            append(text, event);
+        }
+        for (ServerLogSink tail : tails) {
+            tail.log(text.toString());
+        }
+    }
+
+    /**
+     * One line per event: time, thread and message, the message's own trailing line break dropped. The time up
+     * to the second is formatted once per second, not once per event.
+     */
+    private void append(StringBuilder text, Event event) {
+        long second = event.timestamp / 1000;
+        if (second != formattedSecond) {
+            formattedSecond = second;
+            formattedPrefix = SECOND_FORMATTER.format(Instant.ofEpochSecond(second));
+        }
+        int millis = (int) (event.timestamp % 1000);
+        text.append(formattedPrefix).append('.').append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10));
+        text.append(" [").append(event.thread).append("] ");
+        String message = event.message;
+        int end = message.endsWith("\n") ? message.length() - 1 : message.length();
+        text.append(message, 0, end).append('\n');
+    }
+
+    private void rotateIfNeeded() throws IOException {
+        long now = System.currentTimeMillis();
+        if (out != null && fileBytes < Settings.SERVER_LOG_MAX_FILE_BYTES && now - fileOpenedAt < Settings.SERVER_LOG_ROTATE_MILLIS) {
+            return;
+        }
+        closeFile();
+        Files.createDirectories(directory);
+        Path current = directory.resolve(FILE_NAME);
+        if (Files.exists(current) && Files.size(current) > 0) {
+            long startedAt = fileOpenedAt > 0 ? fileOpenedAt : Files.getLastModifiedTime(current).toMillis();
+            Files.move(current, directory.resolve("server-" + FILE_NAME_FORMATTER.format(Instant.ofEpochMilli(startedAt)) + ".log"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            deleteOldFiles();
+        }
+        out = Files.newBufferedWriter(current, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = 0;
+        fileOpenedAt = now;
+    }
+
+    /**
+     * Keeps the newest rotated files; their names sort by the time they were started.
+     */
+    private void deleteOldFiles() throws IOException {
+        List<Path> rotated = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "server-*.log")) {
+            files.forEach(rotated::add);
+        }
+        rotated.sort(null);
+        for (int i = 0; i < rotated.size() - Settings.SERVER_LOG_MAX_FILES; i++) {
+            Files.deleteIfExists(rotated.get(i));
+        }
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getWrittenEvents() {
+        return writtenEvents;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites;
+    }
+
+    /**
+     * Writes out everything already queued and closes the file.
+     */
+    @Override
+    public void close() {
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Event {
+
+        private final long timestamp;
+        private final String thread;
+        private final String message;
+
+        Event(long timestamp, String thread, String message) {
+            this.timestamp = timestamp;
+            this.thread = thread;
+            this.message = message;
+        }
+    }
+}
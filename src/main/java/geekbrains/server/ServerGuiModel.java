@@ -1,34 +1,107 @@
 package geekbrains.server;
 
-import geekbrains.connection.Network;
+import geekbrains.connection.Connection;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Registry of the users online. Every operation is a single atomic step on a concurrent map, so connection
+ * threads can join, leave and rename at the same time without locking each other out.
+ *
  * @author Abubakar Musanipov
  */
 public class ServerGuiModel {
 
-    private final Map<String, Network> allUsers = new HashMap<>();
+    private final Map<String, Connection> allUsers = new ConcurrentHashMap<>();
 
-    protected Map<String, Network> getAllUsersChat() {
+    protected Map<String, Connection> getAllUsersChat() {
         return allUsers;
     }
 
+    protected Set<String> getNicknames() {
+        return new HashSet<>(allUsers.keySet());
+    }
+
     protected String getName(String nickname) {
         return allUsers.get(nickname).toString();
     }
 
-    protected Network getConnection(String nickname) {
+    protected Connection getConnection(String nickname) {
         return allUsers.get(nickname);
     }
 
-    protected void addUser(String nickname, Network connection) {
-        allUsers.put(nickname, connection);
+    /**
+     * Describes, by nickname, the users whose outbound queue holds at least {@code minDepth} messages or who lost
+     * messages since the last call. {@code lastDropped} carries the losses seen by the previous call and is
+     * updated in place.
+     */
+    protected List<String> getSlowConsumers(int minDepth, Map<Connection, Long> lastDropped) {
+        Map<String, String> slow = new TreeMap<>();
+        Map<Connection, Long> seen = new HashMap<>();
+        for (Map.Entry<String, Connection> user : allUsers.entrySet()) {
+            Connection connection = user.getValue();
+            int depth = connection.getOutboundQueueDepth();
+            long dropped = connection.getDroppedMessages();
+            seen.put(connection, dropped);
+            if (depth >= minDepth || dropped > lastDropped.getOrDefault(connection, 0L)) {
+                slow.put(user.getKey(), String.format("%s (%d queued, %d dropped)", user.getKey(), depth, dropped));
+            }
+        }
+        lastDropped.clear();
+        lastDropped.putAll(seen);
+        return new ArrayList<>(slow.values());
+    }
+
+    protected int getMaxOutboundQueueDepth() {
+        int max = 0;
+        for (Connection connection : allUsers.values()) {
+            max = Math.max(max, connection.getOutboundQueueDepth());
+        }
+        return max;
+    }
+
+    protected long getQueuedMessages() {
+        long queued = 0;
+        for (Connection connection : allUsers.values()) {
+            queued += connection.getOutboundQueueDepth();
+        }
+        return queued;
+    }
+
+    /**
+     * Returns false if the nickname is already taken.
+     */
+    protected boolean reserveNickname(String nickname, Connection connection) {
+        return allUsers.putIfAbsent(nickname, connection) == null;
+    }
+
+    /**
+     * The new nickname is taken before the old one is released, so nobody can grab either of them halfway
+     * through the rename. Returns false if the new nickname is already taken.
+     */
+    protected boolean renameUser(String oldNickname, String newNickname, Connection connection) {
+        if (!reserveNickname(newNickname, connection)) {
+            return false;
+        }
+        allUsers.remove(oldNickname, connection);
+        return true;
+    }
+
+    /**
+     * Removes the nickname only while it still belongs to this connection.
+     */
+    protected void removeUser(String nickname, Connection connection) {
+        allUsers.remove(nickname, connection);
     }
 
-    protected void removeUser(String nickname) {
-        allUsers.remove(nickname);
+    protected void clear() {
+        allUsers.clear();
     }
 }
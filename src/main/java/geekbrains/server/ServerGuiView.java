@@ -1,11 +1,11 @@
 package geekbrains.server;
 
 import geekbrains.client.ClientGuiView;
-import geekbrains.database.SQLService;
 import geekbrains.settings.Settings;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
@@ -26,12 +26,12 @@ public class ServerGuiView extends JFrame {
     private JScrollPane scrollPanel;
     private JTextArea textAreaLog;
     private JButton buttonSaveLog;
+    private JButton buttonExportHistory;
+    private ExportDialog exportDialog;
 
     public ServerGuiView(ServerGuiController server) {
         this.server = server;
 
-        SQLService.getInstance();
-
         try {
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
                 if ("Windows".equals(info.getName())) {
@@ -50,6 +50,7 @@ public class ServerGuiView extends JFrame {
         scrollPanel = new JScrollPane();
         textAreaLog = new JTextArea();
         buttonSaveLog = new JButton();
+        buttonExportHistory = new JButton();
 
         setTitle(Settings.SERVER_TITLE);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -59,6 +60,7 @@ public class ServerGuiView extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 server.stopServer();
+                server.closeEventLog();
                 System.exit(0);
             }
         });
@@ -95,6 +97,16 @@ public class ServerGuiView extends JFrame {
         buttonSaveLog.setText("Save log");
         buttonSaveLog.addActionListener(e -> saveToFile());
 
+        buttonExportHistory.setIcon(new ImageIcon(Settings.IMAGE_ICON_SAVE_LOG));
+        buttonExportHistory.setText("Export history");
+        buttonExportHistory.setToolTipText("Export the chat history from the database");
+        buttonExportHistory.addActionListener(e -> {
+            if (exportDialog == null) {
+                exportDialog = new ExportDialog(this);
+            }
+            exportDialog.setVisible(true);
+        });
+
         textAreaLog.setEditable(false);
         textAreaLog.setColumns(Settings.TEXT_AREA_LOG_SERVER_COLUMNS);
         textAreaLog.setRows(Settings.TEXT_AREA_LOG_SERVER_ROWS);
@@ -112,7 +124,9 @@ public class ServerGuiView extends JFrame {
                                                 .addGap(0, 0, 0)
                                                 .addComponent(buttonStopServer, GroupLayout.DEFAULT_SIZE, 118, Short.MAX_VALUE)
                                                 .addGap(0, 0, 0)
-                                                .addComponent(buttonSaveLog, GroupLayout.DEFAULT_SIZE, 115, Short.MAX_VALUE))
+                                                .addComponent(buttonSaveLog, GroupLayout.DEFAULT_SIZE, 115, Short.MAX_VALUE)
+                                                .addGap(0, 0, 0)
+                                                .addComponent(buttonExportHistory, GroupLayout.DEFAULT_SIZE, 115, Short.MAX_VALUE))
                                         .addComponent(scrollPanel))
                                 .addGap(5, 5, 5))
         );
@@ -125,7 +139,8 @@ public class ServerGuiView extends JFrame {
                                 .addGroup(layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
                                         .addComponent(buttonStartServer, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                                         .addComponent(buttonStopServer, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                                        .addComponent(buttonSaveLog, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+                                        .addComponent(buttonSaveLog, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                                        .addComponent(buttonExportHistory, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                                 .addGap(5, 5, 5))
         );
 
@@ -133,8 +148,22 @@ public class ServerGuiView extends JFrame {
         setVisible(true);
     }
 
+    /**
+     * Appends a batch of log lines, dropping the oldest ones past {@link Settings#SERVER_LOG_WINDOW_LINES}; the
+     * full log is in the log files.
+     */
     public void refreshDialogWindowServer(String serviceMessage) {
-        textAreaLog.append(serviceMessage);
+        SwingUtilities.invokeLater(() -> {
+            textAreaLog.append(serviceMessage);
+            int excess = textAreaLog.getLineCount() - 1 - Settings.SERVER_LOG_WINDOW_LINES;
+            if (excess > 0) {
+                try {
+                    textAreaLog.replaceRange(null, 0, textAreaLog.getLineEndOffset(excess - 1));
+                } catch (BadLocationException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
     }
 
     private void saveToFile() {
@@ -0,0 +1,12 @@
+package geekbrains.server;
+
+/**
+ * Receives the server's event messages, one line at a time.
+ *
+ * @author Abubakar Musanipov
+ */
+@FunctionalInterface
+public interface ServerLogSink {
+
+    void log(String message);
+}
@@ -0,0 +1,11 @@
+package geekbrains.server;
+
+/**
+ * @author Abubakar Musanipov
+ */
+public enum ServerState {
+    STOPPED,
+    STARTING,
+    RUNNING,
+    DRAINING,
+}
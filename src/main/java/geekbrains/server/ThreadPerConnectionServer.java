@@ -0,0 +1,135 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Network;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Blocking server running every connection's receive loop and its writer as tasks of an executor: platform
+ * threads or virtual threads.
+ *
+ * @author Abubakar Musanipov
+ */
+public class ThreadPerConnectionServer implements ServerEngine {
+
+    private final Function<Connection, ConnectionHandler> handlerFactory;
+    private final ExecutorService executor;
+    private final Set<QueuedConnection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    private ServerSocket serverSocket;
+
+    public ThreadPerConnectionServer(Function<Connection, ConnectionHandler> handlerFactory, ExecutorService executor) {
+        this.handlerFactory = handlerFactory;
+        this.executor = executor;
+    }
+
+    public static ThreadPerConnectionServer platformThreads(Function<Connection, ConnectionHandler> handlerFactory) {
+        return new ThreadPerConnectionServer(handlerFactory, Executors.newCachedThreadPool());
+    }
+
+    public static ThreadPerConnectionServer virtualThreads(Function<Connection, ConnectionHandler> handlerFactory) {
+        return new ThreadPerConnectionServer(handlerFactory, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (true) {
+            Socket socket = serverSocket.accept();
+            try {
+                executor.execute(new ConnectionTask(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serverSocket != null && !serverSocket.isClosed();
+    }
+
+    /**
+     * Stops accepting and closes every open connection, those still signing in included, so no connection
+     * thread stays blocked reading once the engine is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } finally {
+            for (QueuedConnection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class ConnectionTask implements Runnable {
+
+        private final Socket socket;
+
+        public ConnectionTask(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            QueuedConnection connection;
+            try {
+                connection = new QueuedConnection(new Network(socket));
+            } catch (IOException e) {
+                closeQuietly(socket);
+                return;
+            }
+            connections.add(connection);
+            if (closed) {
+                connections.remove(connection);
+                connection.close();
+                return;
+            }
+            try {
+                executor.execute(connection);
+            } catch (RejectedExecutionException e) {
+                connections.remove(connection);
+                connection.close();
+                return;
+            }
+            ConnectionHandler handler = handlerFactory.apply(connection);
+            handler.onOpen();
+            try {
+                while (true) {
+                    handler.onMessage(connection.getNetwork().receive());
+                }
+            } catch (Exception e) {
+                connection.close();
+            } finally {
+                connections.remove(connection);
+                handler.onClose();
+            }
+        }
+    }
+}
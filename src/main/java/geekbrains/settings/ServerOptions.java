@@ -0,0 +1,115 @@
+package geekbrains.settings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Server tuning taken from a properties file and {@code --key=value} command line arguments, the latter
+ * winning. Recognised keys: port, engine, event-loops, queue-capacity, overflow-policy, block-timeout-millis,
+ * slow-consumer-check-millis (0 to turn the check off), binary-codec, database-url, auth-cache-ttl-millis, history-buffer-capacity, history-join-backlog,
+ * history-page-size, search-page-size, log-directory, log-max-file-bytes, log-rotate-millis, log-max-files,
+ * metrics-host, metrics-port (negative to turn the endpoint off); {@code --config=<file>} names the properties
+ * file.
+ *
+ * @author Abubakar Musanipov
+ */
+public final class ServerOptions {
+
+    private ServerOptions() {
+    }
+
+    /**
+     * Applies the options to {@link Settings} and returns the port to listen on.
+     */
+    public static int apply(String[] args) throws IOException {
+        Properties options = new Properties();
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            overrides.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        String config = overrides.getProperty("config");
+        if (config != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(config))) {
+                options.load(in);
+            }
+            overrides.remove("config");
+        }
+        options.putAll(overrides);
+
+        for (String key : options.stringPropertyNames()) {
+            String value = options.getProperty(key).trim();
+            switch (key) {
+                case "port":
+                    Settings.SERVER_PORT = Integer.parseInt(value);
+                    break;
+                case "engine":
+                    Settings.SERVER_ENGINE = value;
+                    break;
+                case "event-loops":
+                    Settings.SERVER_EVENT_LOOPS = Integer.parseInt(value);
+                    break;
+                case "queue-capacity":
+                    Settings.SERVER_OUTBOUND_QUEUE_CAPACITY = Integer.parseInt(value);
+                    break;
+                case "overflow-policy":
+                    Settings.SERVER_OUTBOUND_OVERFLOW_POLICY = value;
+                    break;
+                case "block-timeout-millis":
+                    Settings.SERVER_OUTBOUND_BLOCK_TIMEOUT_MILLIS = Long.parseLong(value);
+                    break;
+                case "slow-consumer-check-millis":
+                    Settings.SLOW_CONSUMER_CHECK_MILLIS = Long.parseLong(value);
+                    break;
+                case "database-url":
+                    Settings.DATABASE_URL = value;
+                    break;
+                case "auth-cache-ttl-millis":
+                    Settings.AUTH_CACHE_TTL_MILLIS = Long.parseLong(value);
+                    break;
+                case "history-buffer-capacity":
+                    Settings.HISTORY_BUFFER_CAPACITY = Integer.parseInt(value);
+                    break;
+                case "history-join-backlog":
+                    Settings.HISTORY_JOIN_BACKLOG = Integer.parseInt(value);
+                    break;
+                case "history-page-size":
+                    Settings.HISTORY_PAGE_SIZE = Integer.parseInt(value);
+                    break;
+                case "search-page-size":
+                    Settings.SEARCH_PAGE_SIZE = Integer.parseInt(value);
+                    break;
+                case "log-directory":
+                    Settings.SERVER_LOG_DIRECTORY = value;
+                    break;
+                case "log-max-file-bytes":
+                    Settings.SERVER_LOG_MAX_FILE_BYTES = Long.parseLong(value);
+                    break;
+                case "log-rotate-millis":
+                    Settings.SERVER_LOG_ROTATE_MILLIS = Long.parseLong(value);
+                    break;
+                case "log-max-files":
+                    Settings.SERVER_LOG_MAX_FILES = Integer.parseInt(value);
+                    break;
+                case "metrics-host":
+                    Settings.METRICS_HOST = value;
+                    break;
+                case "metrics-port":
+                    Settings.METRICS_PORT = Integer.parseInt(value);
+                    break;
+                case "binary-codec":
+                    Settings.BINARY_CODEC_ENABLED = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown server option: " + key);
+            }
+        }
+        return Settings.SERVER_PORT;
+    }
+}
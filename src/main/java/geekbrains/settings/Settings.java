@@ -21,6 +21,8 @@ public class Settings {
     public static int TEXT_AREA_CHAT_LOG_ROWS = 5;
     public static int TEXT_AREA_CHAT_LOG_FONT_SIZE = 14;
     public static String TEXT_AREA_CHAT_LOG_FONT_NAME = "Tahoma";
+    public static int CHAT_LOG_RETENTION = 5000;
+    public static long CLIENT_UI_FRAME_MILLIS = 16;
 
     public static int TEXT_AREA_LOG_SERVER_COLUMNS = 20;
     public static int TEXT_AREA_LOG_SERVER_ROWS = 5;
@@ -43,8 +45,46 @@ public class Settings {
     public static String SOUND_URL_NEW_MESSAGE = "src/resource/sounds/new-message.wav";
     public static String SOUND_URL_DISCONNECT = "src/resource/sounds/disconnected.wav";
     public static String SOUND_URL_CONNECTED = "src/resource/sounds/connected.wav";
+    public static long SOUND_MIN_INTERVAL_MILLIS = 250;
+    public static int SOUND_CLIP_POOL_SIZE = 2;
+
+    public static int SERVER_PORT = 8189;
+    public static String SERVER_ENGINE = System.getProperty("chat.server.engine", "nio");
+    public static int SERVER_EVENT_LOOPS = Runtime.getRuntime().availableProcessors();
+    public static int SERVER_ACCEPT_BACKLOG = 1024;
+    public static boolean BINARY_CODEC_ENABLED = true;
+    public static String DEFAULT_ROOM = "general";
+    public static int SERVER_OUTBOUND_QUEUE_CAPACITY = 1024;
+    public static String SERVER_OUTBOUND_OVERFLOW_POLICY = System.getProperty("chat.server.overflow", "DROP_OLDEST");
+    public static long SERVER_OUTBOUND_BLOCK_TIMEOUT_MILLIS = 200;
+    public static long SLOW_CONSUMER_CHECK_MILLIS = 5000;
+
+    public static String DATABASE_URL = System.getProperty("chat.database.url", "jdbc:sqlite:src/main/java/geekbrains/database/usersDatabase.db");
+    public static int DATABASE_POOL_SIZE = 4;
+    public static long DATABASE_BORROW_TIMEOUT_MILLIS = 5000;
+    public static int PERSISTENCE_QUEUE_CAPACITY = 65536;
+    public static int PERSISTENCE_BATCH_SIZE = 500;
+    public static long PERSISTENCE_BATCH_MILLIS = 20;
+    public static long AUTH_CACHE_TTL_MILLIS = 300000;
+    public static int AUTH_CACHE_CAPACITY = 10000;
+    public static int HISTORY_BUFFER_CAPACITY = 1024;
+    public static int HISTORY_JOIN_BACKLOG = 50;
+    public static int HISTORY_PAGE_SIZE = 100;
+    public static int SEARCH_PAGE_SIZE = 20;
+    public static int EXPORT_CHUNK_ROWS = 10000;
+    public static String METRICS_HOST = "127.0.0.1";
+    public static int METRICS_PORT = 9404;
+    public static String SERVER_LOG_DIRECTORY = "logs";
+    public static int SERVER_LOG_QUEUE_CAPACITY = 65536;
+    public static int SERVER_LOG_BATCH_SIZE = 1024;
+    public static long SERVER_LOG_MAX_FILE_BYTES = 10 * 1024 * 1024;
+    public static long SERVER_LOG_ROTATE_MILLIS = 24 * 60 * 60 * 1000;
+    public static int SERVER_LOG_MAX_FILES = 10;
+    public static int SERVER_LOG_TAIL_LINES = 200;
+    public static int SERVER_LOG_WINDOW_LINES = 2000;
 
     public static String LOGIN_TITLE = "Login";
     public static String REGISTRATION_TITLE = "Registration";
+    public static long CLIENT_TASK_TIMEOUT_MILLIS = 10000;
 
 }
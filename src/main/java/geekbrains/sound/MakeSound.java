@@ -1,34 +1,52 @@
 package geekbrains.sound;
 
+import geekbrains.settings.Settings;
+
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Plays the notification sounds on one audio thread. Each file is read and decoded once and kept in memory,
+ * and each sound has a few clips that are opened once and rewound for every play. Requests for a sound that
+ * come faster than {@link Settings#SOUND_MIN_INTERVAL_MILLIS} are merged, so a burst of messages plays it once
+ * per interval rather than once per message.
+ *
  * @author Abubakar Musanipov
  */
 public class MakeSound {
 
-    private static boolean soundOptions;
+    private static final ScheduledExecutorService AUDIO = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-sound");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<String, Sound> SOUNDS = new ConcurrentHashMap<>();
 
-    public static synchronized void playSound(final String url) {
-        if (!soundOptions) {
-            new Thread(() -> {
-                try {
-                    Clip clip = AudioSystem.getClip();
-                    AudioInputStream inputStream = AudioSystem.getAudioInputStream(new File(url));
-                    clip.open(inputStream);
-                    clip.start();
-                } catch (Exception e) {
-                    System.err.println(e.getMessage());
-                }
-            }).start();
+    private static volatile boolean soundOptions;
+
+    public static void playSound(final String url) {
+        if (soundOptions) {
+            return;
+        }
+        Sound sound = SOUNDS.computeIfAbsent(url, Sound::new);
+        if (sound.pending.compareAndSet(false, true)) {
+            long delay = Math.max(0, sound.nextPlay - System.currentTimeMillis());
+            AUDIO.schedule(sound::play, delay, TimeUnit.MILLISECONDS);
         }
     }
 
     public static synchronized void off() {
         soundOptions = true;
+        AUDIO.execute(MakeSound::closeClips);
     }
 
     public static synchronized void on() {
@@ -38,4 +56,98 @@ public class MakeSound {
     public static boolean isIncluded() {
         return soundOptions;
     }
+
+    /**
+     * Releases every audio line, waiting a moment for the audio thread so it can be called right before exit.
+     * The clips are opened again on the next sound.
+     */
+    public static void close() {
+        try {
+            AUDIO.submit(MakeSound::closeClips).get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private static void closeClips() {
+        for (Sound sound : SOUNDS.values()) {
+            sound.closeClips();
+        }
+    }
+
+    /**
+     * One sound file. Apart from the merging flags, only the audio thread touches it.
+     */
+    private static final class Sound {
+
+        private final String url;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile long nextPlay;
+        private final Clip[] clips = new Clip[Math.max(1, Settings.SOUND_CLIP_POOL_SIZE)];
+        private AudioFormat format;
+        private byte[] data;
+        private boolean unplayable;
+
+        Sound(String url) {
+            this.url = url;
+        }
+
+        void play() {
+            pending.set(false);
+            nextPlay = System.currentTimeMillis() + Settings.SOUND_MIN_INTERVAL_MILLIS;
+            if (soundOptions || unplayable) {
+                return;
+            }
+            try {
+                if (data == null) {
+                    try (AudioInputStream inputStream = AudioSystem.getAudioInputStream(new File(url))) {
+                        format = inputStream.getFormat();
+                        data = inputStream.readAllBytes();
+                    }
+                }
+                Clip clip = idleClip();
+                if (clip != null) {
+                    clip.setFramePosition(0);
+                    clip.start();
+                }
+            } catch (Exception e) {
+                unplayable = data == null;
+                System.err.println(e.getMessage());
+            }
+        }
+
+        /**
+         * A clip that is not playing, opened on first use. Null when all of them are busy: the sound is already
+         * being heard.
+         */
+        private Clip idleClip() throws Exception {
+            for (int i = 0; i < clips.length; i++) {
+                if (clips[i] == null) {
+                    Clip clip = AudioSystem.getClip();
+                    try {
+                        clip.open(format, data, 0, data.length);
+                    } catch (Exception e) {
+                        clip.close();
+                        throw e;
+                    }
+                    clips[i] = clip;
+                    return clip;
+                }
+                if (!clips[i].isRunning()) {
+                    clips[i].stop();
+                    return clips[i];
+                }
+            }
+            return null;
+        }
+
+        void closeClips() {
+            for (int i = 0; i < clips.length; i++) {
+                if (clips[i] != null) {
+                    clips[i].close();
+                    clips[i] = null;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package geekbrains.client;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A burst posted within one frame reaches the event thread as one hand-over: the lines as a single append and
+ * the user lists as the last one alone.
+ *
+ * @author Abubakar Musanipov
+ */
+class UiEventQueueTest {
+
+    private static final long FRAME_MILLIS = 500;
+
+    @Test
+    void burstOfLinesIsOneDispatch() throws Exception {
+        List<List<ChatLine>> appends = new ArrayList<>();
+        CountDownLatch dispatched = new CountDownLatch(1);
+        UiEventQueue queue = new UiEventQueue(FRAME_MILLIS, lines -> {
+            appends.add(lines);
+            dispatched.countDown();
+        }, users -> {
+        });
+        for (int i = 0; i < 1000; i++) {
+            queue.postLine(new ChatLine(i, "line " + i));
+        }
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(1, appends.size());
+        assertEquals(1000, appends.get(0).size());
+        assertEquals("line 999", appends.get(0).get(999).getText());
+        assertEquals(1, queue.getDispatches());
+        assertEquals(999, queue.getCoalescedEvents());
+    }
+
+    @Test
+    void userListsCollapseIntoTheNewest() throws Exception {
+        List<List<String>> shown = new ArrayList<>();
+        CountDownLatch dispatched = new CountDownLatch(1);
+        UiEventQueue queue = new UiEventQueue(FRAME_MILLIS, lines -> {
+        }, users -> {
+            shown.add(users);
+            dispatched.countDown();
+        });
+        for (int i = 1; i <= 100; i++) {
+            queue.postUserList(List.of("user" + i));
+        }
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(List.of(List.of("user100")), shown);
+        assertEquals(99, queue.getCollapsedUserLists());
+        assertEquals(1, queue.getDispatches());
+    }
+
+    @Test
+    void tasksKeepTheirPlaceBetweenLines() throws Exception {
+        List<String> order = new ArrayList<>();
+        CountDownLatch dispatched = new CountDownLatch(2);
+        UiEventQueue queue = new UiEventQueue(FRAME_MILLIS, lines -> {
+            order.add(lines.size() + " lines");
+            dispatched.countDown();
+        }, users -> {
+        });
+        queue.postLine(new ChatLine(1, "a"));
+        queue.postLine(new ChatLine(2, "b"));
+        queue.post(() -> order.add("task"));
+        queue.postLine(new ChatLine(3, "c"));
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("2 lines", "task", "1 lines"), order);
+        assertEquals(1, queue.getDispatches());
+    }
+}
@@ -0,0 +1,149 @@
+package geekbrains.connection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Every message type survives the binary layout with each field absent or present, and malformed payloads
+ * fail as bad input.
+ *
+ * @author Abubakar Musanipov
+ */
+class BinaryCodecTest {
+
+    private static final MessageCodec CODEC = MessageCodec.BINARY;
+
+    @ParameterizedTest
+    @EnumSource(MessageType.class)
+    void roundTripsWithoutFields(MessageType type) throws Exception {
+        Message decoded = roundTrip(new Message(type));
+        assertEquals(type, decoded.getTypeMessage());
+        assertNull(decoded.getSender());
+        assertNull(decoded.getRecipient());
+        assertNull(decoded.getRoom());
+        assertNull(decoded.getTextMessage());
+        assertNull(decoded.getListUsers());
+        assertNull(decoded.getHistory());
+        assertEquals(0, decoded.getId());
+        assertEquals(0, decoded.getTimestamp());
+    }
+
+    @ParameterizedTest
+    @EnumSource(MessageType.class)
+    void roundTripsWithEveryField(MessageType type) throws Exception {
+        Message entry = new Message(MessageType.PRIVATE_TEXT_MESSAGE, "bob", "alice", "general", "hi", null, 41, 1700000000000L);
+        Message message = new Message(type, "alice", "bob", "general", "Привет, 世界 👋", users("alice", "bob", ""),
+                Long.MAX_VALUE, 1700000000123L, List.of(entry, new Message(MessageType.USER_ADDED, "carol")));
+        assertSameMessage(message, roundTrip(message));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MessageType.class)
+    void roundTripsEachFieldAlone(MessageType type) throws Exception {
+        List<Message> messages = List.of(
+                new Message(type, "alice", null, null, null, null, 0, 0, null),
+                new Message(type, null, "bob", null, null, null, 0, 0, null),
+                new Message(type, null, null, "general", null, null, 0, 0, null),
+                new Message(type, null, null, null, "", null, 0, 0, null),
+                new Message(type, null, null, null, null, users(), 0, 0, null),
+                new Message(type, null, null, null, null, null, 1, 0, null),
+                new Message(type, null, null, null, null, null, 0, 1, null),
+                new Message(type, null, null, null, null, null, 0, 0, List.of()));
+        for (Message message : messages) {
+            assertSameMessage(message, roundTrip(message));
+        }
+    }
+
+    @Test
+    void roundTripsLongText() throws Exception {
+        char[] text = new char[100_000];
+        Arrays.fill(text, 'x');
+        Message message = new Message(MessageType.TEXT_MESSAGE, new String(text));
+        assertEquals(message.getTextMessage(), roundTrip(message).getTextMessage());
+    }
+
+    @Test
+    void rejectsEveryTruncation() throws Exception {
+        Message message = new Message(MessageType.HISTORY_PAGE, "alice", "bob", "general", "hello", users("alice", "bob"),
+                300, 1700000000123L, List.of(new Message(MessageType.TEXT_MESSAGE, "bob", null, "general", "hi")));
+        byte[] payload = encode(message);
+        for (int length = 0; length < payload.length; length++) {
+            int truncated = length;
+            assertThrows(IOException.class, () -> CODEC.decode(payload, 0, truncated), "Decoded " + truncated + " bytes");
+        }
+    }
+
+    @Test
+    void rejectsStringLongerThanPayload() {
+        byte[] payload = {(byte) MessageType.TEXT_MESSAGE.ordinal(), 1, 10, 'h', 'i'};
+        assertThrows(IOException.class, () -> CODEC.decode(payload, 0, payload.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, -128, 0x7F})
+    void rejectsUnknownTypeTag(int tag) {
+        byte[] payload = {(byte) tag, 0};
+        assertThrows(IOException.class, () -> CODEC.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void rejectsFirstTagPastTheLastType() {
+        byte[] payload = {(byte) MessageType.values().length, 0};
+        assertThrows(IOException.class, () -> CODEC.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void decodesAtAnOffset() throws Exception {
+        byte[] payload = encode(new Message(MessageType.TEXT_MESSAGE, "alice", null, "general", "hi"));
+        byte[] padded = new byte[payload.length + 7];
+        System.arraycopy(payload, 0, padded, 3, payload.length);
+        assertEquals("hi", CODEC.decode(padded, 3, payload.length).getTextMessage());
+    }
+
+    private static Set<String> users(String... nicknames) {
+        return new LinkedHashSet<>(Arrays.asList(nicknames));
+    }
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.getTypeMessage(), actual.getTypeMessage());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(expected.getRecipient(), actual.getRecipient());
+        assertEquals(expected.getRoom(), actual.getRoom());
+        assertEquals(expected.getTextMessage(), actual.getTextMessage());
+        assertEquals(expected.getListUsers(), actual.getListUsers());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        if (expected.getHistory() == null) {
+            assertNull(actual.getHistory());
+            return;
+        }
+        assertEquals(expected.getHistory().size(), actual.getHistory().size());
+        for (int i = 0; i < expected.getHistory().size(); i++) {
+            assertSameMessage(expected.getHistory().get(i), actual.getHistory().get(i));
+        }
+    }
+
+    private static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CODEC.encode(message, out);
+        return out.toByteArray();
+    }
+
+    private static Message roundTrip(Message message) throws Exception {
+        byte[] payload = encode(message);
+        return CODEC.decode(payload, 0, payload.length);
+    }
+}
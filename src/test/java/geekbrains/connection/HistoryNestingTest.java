@@ -0,0 +1,84 @@
+package geekbrains.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A history page holds plain messages only; frames that nest pages must fail as bad input, never by running
+ * out of stack.
+ *
+ * @author Abubakar Musanipov
+ */
+class HistoryNestingTest {
+
+    private static final int HAS_HISTORY = 1 << 6;
+
+    @Test
+    void binaryDecodesOnePage() throws Exception {
+        Message page = Message.historyPage("general", List.of(new Message(MessageType.TEXT_MESSAGE, "a", null, "general", "hi")), 7);
+        Message decoded = decode(MessageCodec.BINARY, page);
+        assertEquals(1, decoded.getHistory().size());
+        assertNull(decoded.getHistory().get(0).getHistory());
+    }
+
+    @Test
+    void binaryRejectsDeeplyNestedHistory() {
+        int depth = 500_000;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(depth * 3 + 2);
+        for (int i = 0; i < depth; i++) {
+            out.write(MessageType.HISTORY_PAGE.ordinal());
+            out.write(HAS_HISTORY);
+            out.write(1);
+        }
+        out.write(MessageType.TEXT_MESSAGE.ordinal());
+        out.write(0);
+        byte[] payload = out.toByteArray();
+        assertThrows(IOException.class, () -> MessageCodec.BINARY.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void binaryRejectsHistoryInsideHistoryEntry() {
+        byte[] payload = {(byte) MessageType.HISTORY_PAGE.ordinal(), HAS_HISTORY, 1,
+                (byte) MessageType.HISTORY_PAGE.ordinal(), HAS_HISTORY, 0};
+        assertThrows(IOException.class, () -> MessageCodec.BINARY.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void binaryDoesNotEncodeNestedHistory() {
+        Message nested = Message.historyPage("general", List.of(Message.historyPage("general", List.of(), 0)), 0);
+        assertThrows(IOException.class, () -> MessageCodec.BINARY.encode(nested, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void serializationRejectsNestedHistory() throws Exception {
+        Message message = new Message(MessageType.TEXT_MESSAGE, "a", null, "general", "hi");
+        for (int i = 0; i < 50; i++) {
+            message = Message.historyPage("general", List.of(message), 0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageCodec.SERIALIZATION.encode(message, out);
+        byte[] payload = out.toByteArray();
+        assertThrows(IOException.class, () -> MessageCodec.SERIALIZATION.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void serializationDecodesOnePage() throws Exception {
+        Message page = Message.historyPage("general", List.of(new Message(MessageType.TEXT_MESSAGE, "a", null, "general", "hi")), 7);
+        Message decoded = decode(MessageCodec.SERIALIZATION, page);
+        assertEquals("hi", decoded.getHistory().get(0).getTextMessage());
+    }
+
+    private static Message decode(MessageCodec codec, Message message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(message, out);
+        byte[] payload = out.toByteArray();
+        return codec.decode(payload, 0, payload.length);
+    }
+}
@@ -0,0 +1,108 @@
+package geekbrains.connection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Frame lengths are varints from 0 up to {@link MessageFrames#MAX_FRAME_LENGTH}; a length split across reads
+ * is reported as incomplete, never misread.
+ *
+ * @author Abubakar Musanipov
+ */
+class MessageFramesTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 127, 128, 16383, 16384, MessageFrames.MAX_FRAME_LENGTH})
+    void readsBackEveryLength(int length) throws IOException {
+        byte[] header = varint(length);
+        assertEquals(MessageFrames.varintLength(length), header.length);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        assertEquals(length, MessageFrames.readLength(buffer));
+        assertEquals(header.length, buffer.position());
+        assertEquals(length, MessageFrames.readLength(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    @Test
+    void headerLengthsAtTheEdges() {
+        assertArrayEquals(new byte[]{0}, varint(0));
+        assertArrayEquals(new byte[]{0x7F}, varint(127));
+        assertArrayEquals(new byte[]{(byte) 0x80, 1}, varint(128));
+        assertEquals(3, MessageFrames.varintLength(MessageFrames.MAX_FRAME_LENGTH));
+    }
+
+    @Test
+    void rejectsLengthPastTheLimit() {
+        byte[] header = varint(MessageFrames.MAX_FRAME_LENGTH + 1);
+        assertThrows(IOException.class, () -> MessageFrames.readLength(ByteBuffer.wrap(header)));
+        assertThrows(IOException.class, () -> MessageFrames.readLength(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    @Test
+    void rejectsHeaderThatNeverEnds() {
+        byte[] header = new byte[MessageFrames.MAX_HEADER_LENGTH + 1];
+        Arrays.fill(header, (byte) 0x80);
+        assertThrows(IOException.class, () -> MessageFrames.readLength(ByteBuffer.wrap(header)));
+        assertThrows(IOException.class, () -> MessageFrames.readLength(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    @Test
+    void incompleteHeaderLeavesTheBufferAlone() throws IOException {
+        byte[] header = varint(MessageFrames.MAX_FRAME_LENGTH);
+        for (int available = 0; available < header.length; available++) {
+            ByteBuffer buffer = ByteBuffer.wrap(header, 0, available);
+            assertEquals(-1, MessageFrames.readLength(buffer));
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    void incompleteHeaderFromStreamIsEndOfFile() {
+        byte[] header = Arrays.copyOf(varint(128), 1);
+        assertThrows(EOFException.class, () -> MessageFrames.readLength(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    @Test
+    void frameHoldsLengthThenPayload() throws Exception {
+        Message message = new Message(MessageType.TEXT_MESSAGE, "alice", null, "general", "x".repeat(200));
+        ByteBuffer frame = MessageFrames.encode(message, MessageCodec.BINARY);
+        int length = MessageFrames.readLength(frame);
+        assertEquals(frame.remaining(), length);
+        byte[] payload = new byte[length];
+        frame.get(payload);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        MessageCodec.BINARY.encode(message, expected);
+        assertArrayEquals(expected.toByteArray(), payload);
+    }
+
+    @Test
+    void framesUpToTheLimitOnly() throws Exception {
+        String text = "x".repeat(MessageFrames.MAX_FRAME_LENGTH - 16);
+        ByteBuffer frame = MessageFrames.encode(new Message(MessageType.TEXT_MESSAGE, text), MessageCodec.BINARY);
+        assertEquals(frame.remaining() - MessageFrames.varintLength(MessageFrames.MAX_FRAME_LENGTH), MessageFrames.readLength(frame));
+        String tooLong = "x".repeat(MessageFrames.MAX_FRAME_LENGTH);
+        assertThrows(IOException.class, () -> MessageFrames.encode(new Message(MessageType.TEXT_MESSAGE, tooLong), MessageCodec.BINARY));
+    }
+
+    private static byte[] varint(int value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            MessageFrames.writeVarint(value, out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toByteArray();
+    }
+}
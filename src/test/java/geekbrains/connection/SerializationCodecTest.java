@@ -0,0 +1,57 @@
+package geekbrains.connection;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Everything the server sends still passes the deserialization filter, user lists of every set type included.
+ *
+ * @author Abubakar Musanipov
+ */
+class SerializationCodecTest {
+
+    private static final List<String> USERS = Arrays.asList("alice", "bob", "carol");
+
+    static Stream<Set<String>> userLists() {
+        return Stream.of(new HashSet<>(USERS), new LinkedHashSet<>(USERS), new TreeSet<>(USERS), Set.copyOf(USERS), new HashSet<>());
+    }
+
+    @ParameterizedTest
+    @MethodSource("userLists")
+    void decodesUserList(Set<String> users) throws Exception {
+        Message decoded = roundTrip(new Message(MessageType.NICKNAME_ACCEPTED, users));
+        assertEquals(users, decoded.getListUsers());
+    }
+
+    @ParameterizedTest
+    @EnumSource(MessageType.class)
+    void decodesEveryTypeWithEveryField(MessageType type) throws Exception {
+        Message entry = new Message(MessageType.TEXT_MESSAGE, "bob", null, "general", "hi", null, 41, 1700000000000L);
+        Message message = new Message(type, "alice", "bob", "general", "hello", new HashSet<>(USERS), 42, 1700000000123L,
+                List.of(entry));
+        Message decoded = roundTrip(message);
+        assertEquals(type, decoded.getTypeMessage());
+        assertEquals(message.getListUsers(), decoded.getListUsers());
+        assertEquals("hi", decoded.getHistory().get(0).getTextMessage());
+        assertEquals(42, decoded.getId());
+    }
+
+    private static Message roundTrip(Message message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageCodec.SERIALIZATION.encode(message, out);
+        byte[] payload = out.toByteArray();
+        return MessageCodec.SERIALIZATION.decode(payload, 0, payload.length);
+    }
+}
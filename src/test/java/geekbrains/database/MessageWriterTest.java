@@ -0,0 +1,71 @@
+package geekbrains.database;
+
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A message the database refuses must not take the rest of its batch down with it.
+ *
+ * @author Abubakar Musanipov
+ */
+class MessageWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private SQLService service;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        service = new SQLService("jdbc:sqlite:" + directory.resolve("chat.db"), 1);
+        service.createHistorySchema();
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        service.close();
+    }
+
+    @Test
+    void savesTheRestOfABatchWithABadMessage() throws Exception {
+        try (MessageWriter writer = new MessageWriter(service)) {
+            for (long id : new long[]{1, 2, 2, 3, 4}) {
+                assertTrue(writer.save(text(id)));
+            }
+            assertTrue(writer.awaitWritten(5000));
+            assertEquals(4, writer.getSavedMessages());
+            assertEquals(1, writer.getFailedMessages());
+        }
+        List<Message> history = service.loadHistory("general", Long.MAX_VALUE, 10);
+        assertEquals(4, history.size());
+        assertEquals(4, service.getLastMessageId());
+    }
+
+    @Test
+    void savesEveryMessageOfAGoodBatch() throws Exception {
+        try (MessageWriter writer = new MessageWriter(service)) {
+            for (long id = 1; id <= 100; id++) {
+                assertTrue(writer.save(text(id)));
+            }
+            assertTrue(writer.awaitWritten(5000));
+            assertEquals(100, writer.getSavedMessages());
+            assertEquals(0, writer.getFailedMessages());
+            assertEquals(0, writer.getFailedTransactions());
+        }
+    }
+
+    private static Message text(long id) {
+        return new Message(MessageType.TEXT_MESSAGE, "alice", null, "general", "message " + id)
+                .withServerStamp(id, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,93 @@
+package geekbrains.database;
+
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Private history belongs to the account, not to the nickname: once a user is renamed, whoever registers the
+ * old nickname must not find the previous owner's private messages.
+ *
+ * @author Abubakar Musanipov
+ */
+class RenameHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private SQLService service;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        service = new SQLService("jdbc:sqlite:" + directory.resolve("chat.db"), 2);
+        try (Connection connection = service.openConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users (ID INTEGER PRIMARY KEY NOT NULL, Nickname TEXT UNIQUE NOT NULL, Password TEXT NOT NULL);");
+        }
+        service.createHistorySchema();
+        service.registration("alice", "secret1");
+        service.registration("bob", "secret2");
+        save(new Message(MessageType.PRIVATE_TEXT_MESSAGE, "bob", "alice", "general", "secret plans"), 1);
+        save(new Message(MessageType.PRIVATE_TEXT_MESSAGE, "alice", "bob", "general", "secret reply"), 2);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        service.close();
+    }
+
+    @Test
+    void renameTakesPrivateHistoryAlong() throws Exception {
+        assertTrue(service.changeNick("alice", "carol"));
+        assertEquals(2, search("carol").size());
+        service.registration("alice", "secret3");
+        assertTrue(search("alice").isEmpty());
+    }
+
+    @Test
+    void lateMessagesMoveUpToTheirId() throws Exception {
+        assertTrue(service.changeNick("alice", "carol"));
+        save(new Message(MessageType.PRIVATE_TEXT_MESSAGE, "alice", "bob", "general", "secret late"), 3);
+        save(new Message(MessageType.PRIVATE_TEXT_MESSAGE, "alice", "bob", "general", "secret newcomer"), 4);
+        service.moveHistory("alice", "carol", 3);
+        assertEquals(3, search("carol").size());
+        List<Message> left = search("alice");
+        assertEquals(1, left.size());
+        assertEquals("secret newcomer", left.get(0).getTextMessage());
+    }
+
+    @Test
+    void renameToTakenNicknameKeepsHistory() throws Exception {
+        assertThrows(SQLException.class, () -> service.changeNick("alice", "bob"));
+        assertEquals(2, search("alice").size());
+    }
+
+    @Test
+    void renameOfUnknownAccountFails() throws Exception {
+        assertFalse(service.changeNick("dave", "erin"));
+    }
+
+    private List<Message> search(String viewer) throws Exception {
+        return service.search(SearchQuery.parse("secret"), "general", viewer, 0, 10);
+    }
+
+    private void save(Message message, long id) throws Exception {
+        try (MessageWriter writer = new MessageWriter(service)) {
+            writer.save(message.withServerStamp(id, System.currentTimeMillis()));
+            assertTrue(writer.awaitWritten(5000));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package geekbrains.database;
+
+import geekbrains.connection.Message;
+import geekbrains.connection.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Search pages follow the offset the client sends, including offsets no result set could reach.
+ *
+ * @author Abubakar Musanipov
+ */
+class SearchTest {
+
+    @TempDir
+    Path directory;
+
+    private SQLService service;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        service = new SQLService("jdbc:sqlite:" + directory.resolve("chat.db"), 1);
+        service.createHistorySchema();
+        try (MessageWriter writer = new MessageWriter(service)) {
+            for (long id = 1; id <= 3; id++) {
+                writer.save(new Message(MessageType.TEXT_MESSAGE, "alice", null, "general", "hello " + id)
+                        .withServerStamp(id, System.currentTimeMillis()));
+            }
+            assertTrue(writer.awaitWritten(5000));
+        }
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        service.close();
+    }
+
+    @Test
+    void pagesByOffset() throws Exception {
+        assertEquals(3, search(0).size());
+        assertEquals(2, search(1).size());
+        assertEquals(0, search(3).size());
+    }
+
+    @Test
+    void offsetsPastIntRangeFindNothing() throws Exception {
+        assertEquals(0, search(Integer.MAX_VALUE + 1L).size());
+        assertEquals(0, search(Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void negativeOffsetFindsNothing() throws Exception {
+        assertEquals(0, search(-1).size());
+        assertEquals(0, search(Long.MIN_VALUE).size());
+    }
+
+    private List<Message> search(long offset) throws Exception {
+        return service.search(SearchQuery.parse("hello"), "general", "bob", offset, 10);
+    }
+}
@@ -0,0 +1,43 @@
+package geekbrains.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.management.ReflectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A duration lands in the first bucket whose bound it does not exceed, and the MBean answers operations the
+ * way JMX clients expect.
+ *
+ * @author Abubakar Musanipov
+ */
+class MetricsTest {
+
+    @ParameterizedTest
+    @CsvSource({"0, 0.000001", "999, 0.000001", "1000, 0.000001", "1001, 0.000002", "1900, 0.000002",
+            "2000, 0.000002", "2001, 0.000004", "1000000, 0.001024", "1024000, 0.001024", "1024001, 0.002048"})
+    void recordsIntoTheBucketAtOrAboveTheDuration(long nanos, double bound) {
+        Histogram histogram = new Histogram("test_seconds", null, "Test.");
+        histogram.record(nanos);
+        assertEquals(bound, histogram.getQuantile(1));
+    }
+
+    @Test
+    void recordsLongDurationsIntoTheLastBucket() {
+        Histogram histogram = new Histogram("test_seconds", null, "Test.");
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Double.POSITIVE_INFINITY, histogram.getQuantile(1));
+    }
+
+    @Test
+    void mbeanHasNoOperations() {
+        MetricsMBean mbean = new MetricsMBean(new MetricsRegistry());
+        ReflectionException e = assertThrows(ReflectionException.class, () -> mbean.invoke("reset", new Object[0], new String[0]));
+        assertInstanceOf(NoSuchMethodException.class, e.getTargetException());
+    }
+}
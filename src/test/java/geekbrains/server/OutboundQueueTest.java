@@ -0,0 +1,55 @@
+package geekbrains.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The queue holds at most its capacity and applies the overflow policy once it is full.
+ *
+ * @author Abubakar Musanipov
+ */
+class OutboundQueueTest {
+
+    @Test
+    void dropOldestKeepsTheNewest() throws Exception {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(3, OverflowPolicy.DROP_OLDEST, 0);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(queue.offer(i, true));
+        }
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDropped());
+        assertEquals(3, queue.poll());
+        assertEquals(4, queue.poll());
+        assertEquals(5, queue.poll());
+    }
+
+    @Test
+    void disconnectRefusesPastCapacity() throws Exception {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, OverflowPolicy.DISCONNECT, 0);
+        assertTrue(queue.offer(1, true));
+        assertTrue(queue.offer(2, true));
+        assertFalse(queue.offer(3, true));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void blockGivesUpAfterTheTimeout() throws Exception {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(1, OverflowPolicy.BLOCK, 10);
+        assertTrue(queue.offer(1, true));
+        assertFalse(queue.offer(2, true));
+        assertFalse(queue.offer(2, false));
+    }
+
+    @Test
+    void closeLeavesOnlyTheSentinel() throws Exception {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST, 0);
+        queue.offer(1, true);
+        queue.offer(2, true);
+        queue.close(-1);
+        assertEquals(-1, queue.take());
+        assertEquals(0, queue.size());
+    }
+}
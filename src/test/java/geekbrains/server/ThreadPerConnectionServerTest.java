@@ -0,0 +1,75 @@
+package geekbrains.server;
+
+import geekbrains.connection.Connection;
+import geekbrains.connection.Message;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Closing the engine ends every connection, including one that never got past the handshake.
+ *
+ * @author Abubakar Musanipov
+ */
+class ThreadPerConnectionServerTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void closeEndsSilentConnections(boolean virtual) throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        Function<Connection, ConnectionHandler> handlers = connection -> new ConnectionHandler() {
+            @Override
+            public void onOpen() {
+                opened.countDown();
+            }
+
+            @Override
+            public void onMessage(Message message) {
+            }
+
+            @Override
+            public void onClose() {
+                closed.countDown();
+            }
+        };
+        ThreadPerConnectionServer server = virtual
+                ? ThreadPerConnectionServer.virtualThreads(handlers)
+                : ThreadPerConnectionServer.platformThreads(handlers);
+        int port = freePort();
+        server.bind(port);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            server.close();
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+            client.setSoTimeout(5000);
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            server.close();
+            acceptor.join(5000);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}